@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ * Shared inputs of the benchmarks: the generated corpus, read fully into memory so disk speed
+ * does not show up in the numbers, and stand-ins for the Sleuth Kit content and exported model.
+ */
+final class BenchmarkCorpus {
+
+    static final String CORPUS_PROPERTY = "steg.corpus";
+    private static final String DEFAULT_CORPUS = "build/corpus";
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * The corpus files whose names start with the prefix, in name order.
+     */
+    static List<byte[]> load(String prefix) throws IOException {
+        File directory = new File(System.getProperty(CORPUS_PROPERTY, DEFAULT_CORPUS));
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("No benchmark corpus in " + directory.getAbsolutePath() + ", run 'ant corpus' first");
+        }
+        Arrays.sort(files);
+        List<byte[]> contents = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().startsWith(prefix)) {
+                contents.add(Files.readAllBytes(file.toPath()));
+            }
+        }
+        if (contents.isEmpty()) {
+            throw new IOException("No " + prefix + "* files in " + directory.getAbsolutePath());
+        }
+        return contents;
+    }
+
+    /**
+     * Clean and stego images interleaved, the mix an ingest job sees.
+     */
+    static List<byte[]> loadImages() throws IOException {
+        List<byte[]> clean = load(CorpusGenerator.CLEAN_PREFIX);
+        List<byte[]> stego = load(CorpusGenerator.STEGO_PREFIX);
+        List<byte[]> images = new ArrayList<>(clean.size() + stego.size());
+        for (int i = 0; i < Math.max(clean.size(), stego.size()); i++) {
+            if (i < clean.size()) {
+                images.add(clean.get(i));
+            }
+            if (i < stego.size()) {
+                images.add(stego.get(i));
+            }
+        }
+        return images;
+    }
+
+    /**
+     * In-memory Content for ImageHeader.read(). Only getSize(), getName() and read() are backed.
+     */
+    static Content asContent(final byte[] data) {
+        return (Content) Proxy.newProxyInstance(Content.class.getClassLoader(), new Class<?>[]{Content.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getSize":
+                        return (long) data.length;
+                    case "getName":
+                        return "benchmark";
+                    case "read":
+                        byte[] buffer = (byte[]) args[0];
+                        long offset = (Long) args[1];
+                        int length = (int) Math.min((Long) args[2], Math.max(0, data.length - offset));
+                        System.arraycopy(data, (int) offset, buffer, 0, length);
+                        return length;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+    }
+
+    /**
+     * The bundled SVC model if the build exported one, otherwise a random RBF model of the same
+     * shape, which costs the same to evaluate.
+     */
+    static SvcModel loadModel(int supportVectors) throws IOException {
+        SvcModel bundled = SvcModel.loadBundled();
+        if (bundled != null) {
+            return bundled;
+        }
+        Random random = new Random(supportVectors);
+        int featureCount = SpamFeatureExtractor.FEATURE_COUNT;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(new byte[]{'S', 'T', 'E', 'G', 'S', 'V', 'C', '1'});
+            out.writeUTF("benchmark-random-" + supportVectors);
+            out.writeUTF("rbf");
+            out.writeDouble(1.0 / featureCount);
+            out.writeDouble(0);
+            out.writeInt(3);
+            out.writeInt(featureCount);
+            for (int i = 0; i < featureCount; i++) {
+                out.writeDouble(random.nextDouble() / featureCount);  // mean
+            }
+            for (int i = 0; i < featureCount; i++) {
+                out.writeDouble(0.5 + random.nextDouble());  // scale
+            }
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeInt(supportVectors);
+            for (int i = 0; i < supportVectors; i++) {
+                out.writeDouble(random.nextGaussian());  // dual coefficients
+            }
+            out.writeDouble(random.nextGaussian());  // intercept
+            for (int i = 0; i < supportVectors * featureCount; i++) {
+                out.writeDouble(random.nextGaussian());
+            }
+        }
+        return SvcModel.load(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
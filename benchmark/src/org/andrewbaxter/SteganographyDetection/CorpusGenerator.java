@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * Writes the synthetic benchmark corpus: smooth, noisy "photographs", the same images with
+ * every LSB replaced by random payload bits, and random non-image files for the filter.
+ * Seeded, so every run and every machine benchmarks the same bytes.
+ *
+ *     java CorpusGenerator <output directory> [images per kind] [width] [height]
+ */
+public final class CorpusGenerator {
+
+    static final String CLEAN_PREFIX = "clean_";
+    static final String STEGO_PREFIX = "stego_";
+    static final String OTHER_PREFIX = "other_";
+    private static final long SEED = 0x5743L;
+
+    private CorpusGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CorpusGenerator <output directory> [images per kind] [width] [height]");
+            System.exit(2);
+        }
+        File directory = new File(args[0]);
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+        int height = args.length > 3 ? Integer.parseInt(args[3]) : 768;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Random random = new Random(SEED + i);
+            BufferedImage clean = naturalImage(random, width, height);
+            ImageIO.write(clean, "png", new File(directory, String.format("%s%04d.png", CLEAN_PREFIX, i)));
+            ImageIO.write(embedLsb(clean, random), "png", new File(directory, String.format("%s%04d.png", STEGO_PREFIX, i)));
+
+            byte[] other = new byte[64 * 1024];
+            random.nextBytes(other);
+            Files.write(new File(directory, String.format("%s%04d.bin", OTHER_PREFIX, i)).toPath(), other);
+        }
+        System.out.println("Wrote " + count + " clean, stego and non-image files of " + width + "x" + height + " to " + directory);
+    }
+
+    // A gradient plus a few low-frequency waves plus sensor-like noise, so neighbouring
+    // pixel differences look like a photograph's rather than flat or white noise
+    static BufferedImage naturalImage(Random random, int width, int height) {
+        double[] frequencies = new double[6];
+        double[] phases = new double[6];
+        for (int k = 0; k < frequencies.length; k++) {
+            frequencies[k] = 0.002 + random.nextDouble() * 0.03;
+            phases[k] = random.nextDouble() * Math.PI * 2;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double base = 128 + 40.0 * (x - width / 2) / width + 30.0 * (y - height / 2) / height;
+                for (int k = 0; k < frequencies.length; k++) {
+                    base += 12 * Math.sin(frequencies[k] * (k % 2 == 0 ? x : y) + phases[k]);
+                }
+                int r = clip(base + 10 + random.nextGaussian() * 2);
+                int g = clip(base + random.nextGaussian() * 2);
+                int b = clip(base - 10 + random.nextGaussian() * 2);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    // Full-capacity LSB replacement, the case the chi-square pre-filter and SPAM are built for
+    static BufferedImage embedLsb(BufferedImage clean, Random random) {
+        BufferedImage stego = new BufferedImage(clean.getWidth(), clean.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < clean.getHeight(); y++) {
+            for (int x = 0; x < clean.getWidth(); x++) {
+                stego.setRGB(x, y, (clean.getRGB(x, y) & 0xfefefe) | (random.nextInt() & 0x010101));
+            }
+        }
+        return stego;
+    }
+
+    private static int clip(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * The per-file cost of deciding whether process() scans a file: sniffing the header and
+ * checking it against the selection policy, over a mix of images and non-images.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    private final ImageSelectionPolicy policy = ImageSelectionPolicy.defaults();
+    private final byte[] headerBuffer = new byte[ImageHeader.SNIFF_BYTES];
+    private Content[] files;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Content> contents = new ArrayList<>();
+        List<byte[]> images = BenchmarkCorpus.loadImages();
+        List<byte[]> others = BenchmarkCorpus.load(CorpusGenerator.OTHER_PREFIX);
+        for (int i = 0; i < Math.max(images.size(), others.size()); i++) {
+            if (i < images.size()) {
+                contents.add(BenchmarkCorpus.asContent(images.get(i)));
+            }
+            if (i < others.size()) {
+                contents.add(BenchmarkCorpus.asContent(others.get(i)));
+            }
+        }
+        files = contents.toArray(new Content[0]);
+    }
+
+    @Benchmark
+    public SkipReason sniffAndCheck() throws TskCoreException {
+        Content file = files[next];
+        next = (next + 1) % files.length;
+        return policy.check(file.getSize(), ImageHeader.read(file, headerBuffer));
+    }
+
+    @Benchmark
+    public boolean mimeTypeCheck() {
+        next = (next + 1) % files.length;
+        return policy.isNotImage((next & 1) == 0 ? "image/png" : "application/pdf");
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end cost of scoring one image with the in-JVM engine, as a scoring thread does it:
+ * decode, SPAM features, SVC decision. Also the chi-square pre-filter on the decoded image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class InJvmScoringBenchmark {
+
+    @Param({"1000"})
+    public int supportVectors;  // Only used if no model was exported into the build
+
+    private final SpamFeatureExtractor featureExtractor = new SpamFeatureExtractor();
+    private final LsbScreen lsbScreen = new LsbScreen(LsbScreen.DEFAULT_CLEAN_BELOW, LsbScreen.DEFAULT_SUSPECTED_ABOVE);
+    private SvcModel model;
+    private List<byte[]> images;
+    private BufferedImage[] decoded;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        model = BenchmarkCorpus.loadModel(supportVectors);
+        images = BenchmarkCorpus.loadImages();
+        decoded = new BufferedImage[images.size()];
+        for (int i = 0; i < decoded.length; i++) {
+            decoded[i] = decode(images.get(i));
+        }
+    }
+
+    private static BufferedImage decode(byte[] image) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(image));
+    }
+
+    @Benchmark
+    public double scoreFile() throws IOException {
+        byte[] image = images.get(next);
+        next = (next + 1) % images.size();
+        return model.decisionFunction(featureExtractor.extract(decode(image)));
+    }
+
+    @Benchmark
+    public double preFilter() {
+        BufferedImage image = decoded[next];
+        next = (next + 1) % decoded.length;
+        return lsbScreen.pairOfValuesPValue(image);
+    }
+}
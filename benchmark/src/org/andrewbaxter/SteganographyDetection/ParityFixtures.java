@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Writes the fixtures in benchmark/parity that scripts/parity_check.py scores by default:
+ * clean and LSB-embedded images from CorpusGenerator, in colour and grey, as PNG and as JPEG
+ * at two qualities. Seeded, so rerunning it rewrites the same files.
+ *
+ *     java ParityFixtures <output directory>
+ */
+public final class ParityFixtures {
+
+    private static final long SEED = 0x5041L;
+    private static final int IMAGES = 2;
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final float[] JPEG_QUALITIES = {0.75f, 0.95f};
+
+    private ParityFixtures() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: ParityFixtures <output directory>");
+            System.exit(2);
+        }
+        File directory = new File(args[0]);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        for (int i = 0; i < IMAGES; i++) {
+            Random random = new Random(SEED + i);
+            BufferedImage clean = CorpusGenerator.naturalImage(random, WIDTH, HEIGHT);
+            BufferedImage stego = CorpusGenerator.embedLsb(clean, random);
+            write(directory, String.format("clean_%d_rgb", i), clean);
+            write(directory, String.format("stego_%d_rgb", i), stego);
+            write(directory, String.format("clean_%d_grey", i), grey(clean));
+            write(directory, String.format("stego_%d_grey", i), grey(stego));
+        }
+        System.out.println("Wrote " + IMAGES * 4 + " images as PNG and JPEG to " + directory);
+    }
+
+    private static void write(File directory, String name, BufferedImage image) throws IOException {
+        ImageIO.write(image, "png", new File(directory, name + ".png"));
+        for (float quality : JPEG_QUALITIES) {
+            writeJpeg(image, quality, new File(directory, String.format("%s_q%d.jpg", name, Math.round(quality * 100))));
+        }
+    }
+
+    private static void writeJpeg(BufferedImage image, float quality, File file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static BufferedImage grey(BufferedImage image) {
+        BufferedImage grey = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        grey.getGraphics().drawImage(image, 0, 0, null);
+        return grey;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing the end-of-job report for large cases, streamed from a findings log written in
+ * setup. Each operation writes the whole report, so single-shot timing is used rather than
+ * a time-boxed loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportBenchmark {
+
+    private static final long JOB_ID = -16;  // Never a real ingest job id
+
+    @Param({"10000", "1000000"})
+    public int suspectedFiles;
+
+    private DetectionJobResults results;
+    private File directory;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("SteganographyDetectionReportBenchmark").toFile();
+        results = DetectionJobResults.acquire(JOB_ID, new File(directory, "findings.jsonl"));
+        for (int i = 0; i < suspectedFiles; i++) {
+            results.recordProcessed();
+            results.recordSuspected(new SuspectedFile(1000 + i, "/img_evidence.E01/vol_vol2/Users/user/Pictures/IMG_" + i + ".png",
+                    String.format("%032x", i), 0.5 + (i % 97) / 10.0, DetectionMethod.SVM.getDisplayName(),
+                    DetectionStage.CLASSIFIER.getDisplayName(), i % 4 == 0 ? new TileScore(512, 0, 512, 512, 1.25).toString() : null, 40 + i % 200));
+        }
+        DetectionJobResults.release(JOB_ID);  // Completes the findings log the report streams from
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void generateReport() {
+        DetectionReport.generateReport(new File(directory, "report.html").getPath(), "chart.png", results);
+    }
+
+    @Benchmark
+    public void generatePieChart() throws IOException {
+        DetectionReport.generatePieChart(new File(directory, "chart.png").getPath(), results);
+    }
+}
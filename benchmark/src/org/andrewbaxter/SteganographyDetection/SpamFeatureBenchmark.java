@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The SPAM feature kernel on its own (co-occurrence counts of a 512x512 gray image) and with
+ * the grayscale conversion and Lanczos resize that come before it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpamFeatureBenchmark {
+
+    private static final int SIZE = SpamFeatureExtractor.TARGET_SIZE;
+
+    private final SpamFeatureExtractor featureExtractor = new SpamFeatureExtractor();
+    private BufferedImage[] images;
+    private int[][] grayPixels;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<byte[]> corpus = BenchmarkCorpus.loadImages();
+        images = new BufferedImage[corpus.size()];
+        grayPixels = new int[corpus.size()][];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = ImageIO.read(new ByteArrayInputStream(corpus.get(i)));
+            grayPixels[i] = new int[SIZE * SIZE];
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    int rgb = images[i].getRGB(x % images[i].getWidth(), y % images[i].getHeight());
+                    grayPixels[i][y * SIZE + x] = (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public double[] spamKernel() {
+        int[] pixels = grayPixels[next];
+        next = (next + 1) % grayPixels.length;
+        return featureExtractor.spam(pixels, SIZE, SIZE);
+    }
+
+    @Benchmark
+    public double[] grayResizeAndSpam() {
+        BufferedImage image = images[next];
+        next = (next + 1) % images.length;
+        return featureExtractor.extract(image);
+    }
+}
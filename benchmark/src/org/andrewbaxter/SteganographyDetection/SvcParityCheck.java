@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.imageio.ImageIO;
+
+/**
+ * Prints "path, decision, Yes/No" for each image as scored by the in-JVM engine, for
+ * scripts/parity_check.py to compare with autopsySVC.py. Build it with "ant compile".
+ *
+ *     java -cp build/classes org.andrewbaxter.SteganographyDetection.SvcParityCheck <model.bin> <image>...
+ */
+public final class SvcParityCheck {
+
+    private SvcParityCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SvcParityCheck <model.bin> <image>...");
+            System.exit(2);
+        }
+        SvcModel model;
+        try (InputStream in = new FileInputStream(args[0])) {
+            model = SvcModel.load(in);
+        }
+        SpamFeatureExtractor extractor = new SpamFeatureExtractor();
+        for (int i = 1; i < args.length; i++) {
+            BufferedImage image = ImageIO.read(new File(args[i]));
+            if (image == null) {
+                System.out.println(args[i] + ",,Error");
+                continue;
+            }
+            double decision = model.decisionFunction(extractor.extract(image));
+            System.out.println(args[i] + "," + decision + "," + (model.isStego(decision) ? "Yes" : "No"));
+        }
+    }
+}
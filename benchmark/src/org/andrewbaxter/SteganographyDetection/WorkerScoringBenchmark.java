@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end cost of scoring with a Python worker: framing the batch, the pipe round trip,
+ * decoding, SPAM and the SVC in Python. One operation is one batch, so the per-file cost is
+ * the score divided by batchSize. The worker is started once per trial, as ScoringWorkerPool
+ * does per job, so process start-up is not part of the score.
+ *
+ * Needs Python with the packages in requirements.txt; set steg.python and steg.scripts if
+ * python is not on the PATH or the benchmark does not run from the benchmark directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class WorkerScoringBenchmark {
+
+    private static final byte[] NAME = "corpus.png".getBytes(StandardCharsets.UTF_8);  // Workers only look at the extension
+
+    @Param({"1", "32"})
+    public int batchSize;
+
+    @Param({"autopsySVC.py", "LSB.py"})
+    public String workerScript;
+
+    private Process process;
+    private DataOutputStream toWorker;
+    private DataInputStream fromWorker;
+    private List<byte[]> images;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        images = BenchmarkCorpus.loadImages();
+        File scripts = new File(System.getProperty("steg.scripts", "../src/org/andrewbaxter/SteganographyDetection/scripts"));
+        ProcessBuilder processBuilder = new ProcessBuilder(System.getProperty("steg.python", "python"),
+                new File(scripts, workerScript).getAbsolutePath(), "--worker");
+        processBuilder.directory(scripts);
+        processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        process = processBuilder.start();
+        toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), 65536));
+        fromWorker = new DataInputStream(process.getInputStream());
+        String greeting = new String(readFrame(), StandardCharsets.UTF_8);
+        if (!greeting.startsWith("READY ")) {
+            throw new IOException("Unexpected greeting from " + workerScript + ": " + greeting);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        toWorker.close();
+        process.destroyForcibly();
+    }
+
+    @Benchmark
+    public byte[] scoreBatch() throws IOException {
+        // Same framing as ScoringWorkerPool.writeBatchFrame
+        byte[][] batch = new byte[batchSize][];
+        int payloadLength = 2;
+        for (int i = 0; i < batchSize; i++) {
+            batch[i] = images.get(next);
+            next = (next + 1) % images.size();
+            payloadLength += 2 + NAME.length + 4 + batch[i].length;
+        }
+        toWorker.writeInt(payloadLength);
+        toWorker.writeShort(batchSize);
+        for (byte[] image : batch) {
+            toWorker.writeShort(NAME.length);
+            toWorker.write(NAME);
+            toWorker.writeInt(image.length);
+            toWorker.write(image);
+        }
+        toWorker.flush();
+        return readFrame();  // A binary result per image
+    }
+
+    private byte[] readFrame() throws IOException {
+        byte[] payload = new byte[fromWorker.readInt()];
+        fromWorker.readFully(payload);
+        return payload;
+    }
+}
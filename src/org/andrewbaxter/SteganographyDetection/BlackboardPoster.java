@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
+import org.sleuthkit.autopsy.casemodule.services.TagsManager;
+import org.sleuthkit.autopsy.ingest.IngestModule.IngestModuleException;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Blackboard;
+import org.sleuthkit.datamodel.Blackboard.BlackboardException;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.TagName;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Tags suspected files and posts their artifacts for a whole ingest job. The tag name and
+ * the custom artifact and attribute types are looked up once per job, and artifacts are
+ * posted to the blackboard in batches rather than one database round trip per hit.
+ * Batches are flushed when full, every few seconds, and when the last module instance of
+ * the job shuts down.
+ */
+final class BlackboardPoster {
+
+    static final String MODULE_NAME = "SteganographyDetection";
+    static final String TAG_NAME = "Suspected Steganography";
+    private static final int BATCH_SIZE = 100;
+    private static final long FLUSH_INTERVAL_MS = 5000;
+
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+    private static final Map<Long, BlackboardPoster> posters = new HashMap<>();  // Posters by ingest job id
+
+    private final Blackboard blackboard;
+    private final TagsManager tagsManager;
+    private final TagName tagName;
+    private final BlackboardArtifact.Type artifactType;
+    private final BlackboardAttribute.Type scoreType;
+    private final BlackboardAttribute.Type methodType;
+    private final BlackboardAttribute.Type modelVersionType;
+    private final BlackboardAttribute.Type stageType;
+    private final ScheduledExecutorService flusher;
+    private List<BlackboardArtifact> pending = new ArrayList<>(BATCH_SIZE);
+    private int references = 0;
+
+    /**
+     * Get the poster for an ingest job, creating it for the first module instance of the job.
+     * Every call must be matched by a call to release().
+     */
+    static synchronized BlackboardPoster acquire(long jobId) throws IngestModuleException {
+        BlackboardPoster poster = posters.get(jobId);
+        if (poster == null) {
+            poster = new BlackboardPoster();
+            posters.put(jobId, poster);
+        }
+        poster.references++;
+        return poster;
+    }
+
+    /**
+     * Release the poster for an ingest job, posting what is left once the last module instance is done.
+     */
+    static synchronized void release(long jobId) {
+        BlackboardPoster poster = posters.get(jobId);
+        if (poster == null) {
+            return;
+        }
+        poster.references--;
+        if (poster.references <= 0) {
+            posters.remove(jobId);
+            poster.close();
+        }
+    }
+
+    private BlackboardPoster() throws IngestModuleException {
+        try {
+            Case currentCase = Case.getCurrentCaseThrows();
+            blackboard = currentCase.getSleuthkitCase().getBlackboard();
+            tagsManager = currentCase.getServices().getTagsManager();
+            tagName = getOrAddTagName(tagsManager);
+            artifactType = blackboard.getOrAddArtifactType("STEGANOGRAPHY_DETECTION_HIT", "Suspected Steganography");
+            scoreType = blackboard.getOrAddAttributeType("STEGANOGRAPHY_SCORE",
+                    BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.DOUBLE, "Detection Score");
+            methodType = blackboard.getOrAddAttributeType("STEGANOGRAPHY_METHOD",
+                    BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, "Detection Method");
+            modelVersionType = blackboard.getOrAddAttributeType("STEGANOGRAPHY_MODEL_VERSION",
+                    BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, "Model Version");
+            stageType = blackboard.getOrAddAttributeType("STEGANOGRAPHY_STAGE",
+                    BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, "Detection Stage");
+        } catch (NoCurrentCaseException | TskCoreException | BlackboardException e) {
+            throw new IngestModuleException("Error setting up the steganography tag and artifact types", e);
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SteganographyDetection-blackboard");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static TagName getOrAddTagName(TagsManager tagsManager) throws TskCoreException {
+        TagName existing = tagsManager.getDisplayNamesToTagNamesMap().get(TAG_NAME);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            return tagsManager.addTagName(TAG_NAME, "Suspected steganography", TagName.HTML_COLOR.RED);
+        } catch (TagsManager.TagNameAlreadyExistsException e) {
+            return tagsManager.getDisplayNamesToTagNamesMap().get(TAG_NAME);  // Added by another job meanwhile
+        }
+    }
+
+    /**
+     * Tag a suspected file and queue its artifact for the next batch.
+     */
+    void post(AbstractFile file, Verdict verdict, DetectionMethod detectionMethod) {
+        try {
+            tagsManager.addContentTag(file, tagName, "Steganography detection plugin flagged this file.");
+        } catch (TskCoreException e) {
+            logger.log(Level.SEVERE, "Error tagging file", e);
+        }
+
+        List<BlackboardAttribute> attributes = new ArrayList<>();
+        attributes.add(new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_COMMENT, MODULE_NAME,
+                "Detection Method: " + detectionMethod.getDisplayName()));
+        if (!Double.isNaN(verdict.getScore())) {
+            attributes.add(new BlackboardAttribute(scoreType, MODULE_NAME, verdict.getScore()));
+        }
+        attributes.add(new BlackboardAttribute(methodType, MODULE_NAME, detectionMethod.getDisplayName()));
+        if (verdict.getModelVersion() != null) {
+            attributes.add(new BlackboardAttribute(modelVersionType, MODULE_NAME, verdict.getModelVersion()));
+        }
+        attributes.add(new BlackboardAttribute(stageType, MODULE_NAME, verdict.getStage().getDisplayName()));
+
+        boolean full;
+        try {
+            BlackboardArtifact artifact = file.newArtifact(artifactType.getTypeID());
+            artifact.addAttributes(attributes);
+            synchronized (this) {
+                pending.add(artifact);
+                full = pending.size() >= BATCH_SIZE;
+            }
+        } catch (TskCoreException e) {
+            logger.log(Level.SEVERE, "Error adding artifact to the blackboard", e);
+            return;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Post the queued artifacts in one call.
+     */
+    void flush() {
+        List<BlackboardArtifact> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>(BATCH_SIZE);
+        }
+        try {
+            blackboard.postArtifacts(batch, MODULE_NAME);
+        } catch (BlackboardException e) {
+            logger.log(Level.SEVERE, "Error posting " + batch.size() + " artifacts to the blackboard", e);
+        }
+    }
+
+    private void close() {
+        flusher.shutdownNow();
+        flush();
+    }
+}
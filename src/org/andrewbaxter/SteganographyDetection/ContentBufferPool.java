@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.util.ArrayDeque;
+
+/**
+ * Byte buffers for file content within one job's memory budget, reused across files and
+ * scoring threads so reading large images does not allocate a new array per file. Buffers
+ * are sized in powers of two and pooled by size, so a small file never holds a large buffer.
+ * The budget counts every buffer the pool has handed out or keeps for reuse, by its length.
+ */
+final class ContentBufferPool {
+
+    private static final int MIN_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024 * 1024;  // Bigger buffers are left to the GC
+    private static final int MIN_SIZE_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_POOLED_BUFFER_SIZE) - MIN_SIZE_SHIFT + 1;
+
+    private final ArrayDeque<byte[]>[] idle;  // Per size class, smallest first
+    private final int budgetKilobytes;
+    private int heldKilobytes = 0;  // Handed out or idle
+    private int idleKilobytes = 0;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})  // Arrays of generic types can't be created
+    ContentBufferPool(long budgetBytes) {
+        this.budgetKilobytes = (int) Math.min(budgetBytes >> 10, Integer.MAX_VALUE);
+        this.idle = new ArrayDeque[SIZE_CLASSES];
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            idle[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Get a buffer of at least the given size, or null if it doesn't fit in the budget even
+     * after dropping the idle buffers. Must be given back with release().
+     */
+    byte[] tryAcquire(int size) {
+        int length = bufferLength(size);
+        synchronized (this) {
+            byte[] pooled = takeIdle(length);
+            if (pooled != null) {
+                return pooled;
+            }
+            if (!reserve(charge(length))) {
+                return null;
+            }
+        }
+        return new byte[length];
+    }
+
+    /**
+     * Get a buffer of at least the given size, waiting for other threads to release theirs
+     * if it doesn't fit in the budget. A buffer bigger than the whole budget waits for all
+     * of it. Must be given back with release().
+     */
+    byte[] acquire(int size) throws InterruptedException {
+        int length = bufferLength(size);
+        synchronized (this) {
+            byte[] pooled = takeIdle(length);
+            if (pooled != null) {
+                return pooled;
+            }
+            while (!reserve(charge(length))) {
+                wait();
+            }
+        }
+        return new byte[length];
+    }
+
+    synchronized void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int sizeClass = sizeClass(buffer.length);
+        if (sizeClass >= 0) {
+            idle[sizeClass].addLast(buffer);
+            idleKilobytes += charge(buffer.length);
+        } else {
+            heldKilobytes -= charge(buffer.length);
+        }
+        notifyAll();
+    }
+
+    // Reserve the kilobytes, dropping idle buffers to make room; false if they don't fit
+    private boolean reserve(int kilobytes) {
+        while (heldKilobytes + kilobytes > budgetKilobytes && idleKilobytes > 0) {
+            dropIdle();
+        }
+        if (heldKilobytes + kilobytes > budgetKilobytes) {
+            return false;
+        }
+        heldKilobytes += kilobytes;
+        return true;
+    }
+
+    private byte[] takeIdle(int length) {
+        int sizeClass = sizeClass(length);
+        if (sizeClass < 0 || idle[sizeClass].isEmpty()) {
+            return null;
+        }
+        byte[] buffer = idle[sizeClass].pollLast();  // Most recently used, most likely still cached
+        idleKilobytes -= charge(buffer.length);
+        return buffer;
+    }
+
+    // Drop the oldest idle buffer of the largest size class that has one
+    private void dropIdle() {
+        for (int i = SIZE_CLASSES - 1; i >= 0; i--) {
+            byte[] buffer = idle[i].pollFirst();
+            if (buffer != null) {
+                idleKilobytes -= charge(buffer.length);
+                heldKilobytes -= charge(buffer.length);
+                return;
+            }
+        }
+    }
+
+    // Kilobytes of the budget a buffer holds, at most the whole budget
+    private int charge(int length) {
+        return (int) Math.min((length + 1023L) >> 10, budgetKilobytes);
+    }
+
+    // Round up to a power of two so the buffer can be reused for slightly bigger files later
+    private static int bufferLength(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return MIN_BUFFER_SIZE;
+        }
+        if (size > MAX_POOLED_BUFFER_SIZE) {
+            return size;  // Will not be pooled anyway
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    // -1 for lengths that are not pooled
+    private static int sizeClass(int length) {
+        if (length < MIN_BUFFER_SIZE || length > MAX_POOLED_BUFFER_SIZE || Integer.bitCount(length) != 1) {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros(length) - MIN_SIZE_SHIFT;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.ingest.IngestModule.IngestModuleException;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+
+/**
+ * Counts and suspected files for a whole ingest job. Autopsy runs one module instance per
+ * file ingest thread, so they all record into the same collector and only the last instance
+ * to shut down writes the report. Suspected files go straight to the job's FindingsLog.
+ */
+final class DetectionJobResults {
+
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+    private static final Map<Long, DetectionJobResults> jobs = new HashMap<>();
+    static final int MAX_LISTED_FAILURES = 1000;  // Failed files kept for the report, the rest are only counted
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final LongAdder suspected = new LongAdder();
+    private final Map<SkipReason, LongAdder> skipped = new EnumMap<>(SkipReason.class);  // Filled once, then only read
+    private final LongAdder screened = new LongAdder();
+    private final LongAdder screenedClean = new LongAdder();
+    private final LongAdder screenedSuspected = new LongAdder();
+    private final LongAdder unscreened = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder unlogged = new LongAdder();  // Hits the findings log failed to take
+    private final Map<ScoringError, LongAdder> failures = new EnumMap<>(ScoringError.class);  // Filled once, then only read
+    private final Queue<Failure> listedFailures = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger listedFailureCount = new AtomicInteger();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final DetectionMetrics metrics = new DetectionMetrics();
+    private final FindingsLog findings;
+    private int references = 0;
+
+    private DetectionJobResults(FindingsLog findings) {
+        this.findings = findings;
+        for (SkipReason reason : SkipReason.values()) {
+            skipped.put(reason, new LongAdder());
+        }
+        for (ScoringError error : ScoringError.values()) {
+            failures.put(error, new LongAdder());
+        }
+    }
+
+    /**
+     * A file that could not be scored, as listed in the report.
+     */
+    static final class Failure {
+
+        private final long objectId;
+        private final String filePath;
+        private final ScoringError error;
+        private final int attempts;
+
+        Failure(long objectId, String filePath, ScoringError error, int attempts) {
+            this.objectId = objectId;
+            this.filePath = filePath;
+            this.error = error;
+            this.attempts = attempts;
+        }
+
+        long getObjectId() {
+            return objectId;
+        }
+
+        String getFilePath() {
+            return filePath;
+        }
+
+        ScoringError getError() {
+            return error;
+        }
+
+        int getAttempts() {
+            return attempts;
+        }
+    }
+
+    /**
+     * Get the collector for an ingest job, creating it for the first module instance of the job
+     * with its findings log in the case's module directory.
+     * Every call must be matched by a call to release().
+     */
+    static DetectionJobResults acquire(long jobId) throws IngestModuleException {
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        File findingsFile = Paths.get(Case.getCurrentCase().getModuleDirectory(), "SteganographyDetection",
+                "findings_" + timestamp + "_job" + jobId + ".jsonl").toFile();
+        return acquire(jobId, findingsFile);
+    }
+
+    /**
+     * As acquire(jobId), logging findings to the given file if this call creates the collector.
+     */
+    static synchronized DetectionJobResults acquire(long jobId, File findingsFile) throws IngestModuleException {
+        DetectionJobResults results = jobs.get(jobId);
+        if (results == null) {
+            try {
+                results = new DetectionJobResults(new FindingsLog(findingsFile));
+            } catch (IOException e) {
+                throw new IngestModuleException("Could not create the findings log " + findingsFile, e);
+            }
+            results.metrics.start(jobId);
+            jobs.put(jobId, results);
+        }
+        results.references++;
+        return results;
+    }
+
+    /**
+     * Release the collector for an ingest job. Returns the collector to the last module
+     * instance of the job, which should report it, and null to every other instance.
+     * The findings log is complete once this returns the collector.
+     */
+    static synchronized DetectionJobResults release(long jobId) {
+        DetectionJobResults results = jobs.get(jobId);
+        if (results == null) {
+            return null;
+        }
+        results.references--;
+        if (results.references > 0) {
+            return null;
+        }
+        jobs.remove(jobId);
+        results.metrics.close();
+        try {
+            results.findings.close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error closing the findings log " + results.findings.getFile(), e);
+        }
+        return results;
+    }
+
+    DetectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    void recordProcessed() {
+        processed.increment();
+    }
+
+    /**
+     * A processed file whose verdict came from an earlier job's ledger entry.
+     */
+    void recordRestored() {
+        restored.increment();
+    }
+
+    void recordSuspected(SuspectedFile file) {
+        suspected.increment();
+        try {
+            findings.append(file);
+        } catch (IOException e) {
+            unlogged.increment();
+            logger.log(Level.SEVERE, "Error logging the finding for object " + file.getObjectId(), e);
+        }
+    }
+
+    void recordSkipped(SkipReason reason) {
+        skipped.get(reason).increment();
+    }
+
+    /**
+     * Count a file that got no verdict, also as skipped with NOT_SCORED. Returns true if the
+     * report still lists failed files, in which case the caller should pass it to listFailure().
+     */
+    boolean recordFailure(ScoringError error) {
+        skipped.get(SkipReason.NOT_SCORED).increment();
+        failures.get(error).increment();
+        return listedFailureCount.incrementAndGet() <= MAX_LISTED_FAILURES;
+    }
+
+    void listFailure(Failure failure) {
+        listedFailures.add(failure);
+    }
+
+    /**
+     * A file sent to a worker again after a retryable error.
+     */
+    void recordRetried() {
+        retried.increment();
+    }
+
+    /**
+     * A retried file that was then scored.
+     */
+    void recordRecovered() {
+        recovered.increment();
+    }
+
+    void recordScreened(LsbScreen.Decision decision) {
+        screened.increment();
+        if (decision == LsbScreen.Decision.CLEAN) {
+            screenedClean.increment();
+        } else if (decision == LsbScreen.Decision.SUSPECTED) {
+            screenedSuspected.increment();
+        }
+    }
+
+    void recordUnscreened() {
+        unscreened.increment();
+    }
+
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    void recordCacheMiss() {
+        cacheMisses.increment();
+    }
+
+    long getProcessed() {
+        return processed.sum();
+    }
+
+    long getRestored() {
+        return restored.sum();
+    }
+
+    long getSuspected() {
+        return suspected.sum();
+    }
+
+    /**
+     * Images that could not be read or scored.
+     */
+    long getSkipped() {
+        long failures = 0;
+        for (Map.Entry<SkipReason, LongAdder> entry : skipped.entrySet()) {
+            if (entry.getKey().isFailure()) {
+                failures += entry.getValue().sum();
+            }
+        }
+        return failures;
+    }
+
+    long getSkipped(SkipReason reason) {
+        return skipped.get(reason).sum();
+    }
+
+    long getFailures(ScoringError error) {
+        return failures.get(error).sum();
+    }
+
+    /**
+     * The first MAX_LISTED_FAILURES files that could not be scored.
+     */
+    List<Failure> getListedFailures() {
+        return new ArrayList<>(listedFailures);
+    }
+
+    long getRetried() {
+        return retried.sum();
+    }
+
+    long getRecovered() {
+        return recovered.sum();
+    }
+
+    long getScreened() {
+        return screened.sum();
+    }
+
+    long getScreenedClean() {
+        return screenedClean.sum();
+    }
+
+    long getScreenedSuspected() {
+        return screenedSuspected.sum();
+    }
+
+    long getUnscreened() {
+        return unscreened.sum();
+    }
+
+    long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Suspected files that are counted but missing from the findings log.
+     */
+    long getUnlogged() {
+        return unlogged.sum();
+    }
+
+    /**
+     * The job's findings, one JSON line per suspected file in the order they were found.
+     */
+    File getFindingsFile() {
+        return findings.getFile();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+/**
+ * The detectors the module can run, each backed by a worker script.
+ */
+enum DetectionMethod {
+
+    SVM("Support Vector Machine (SVM)", "autopsySVC.py", false),
+    CHI_SQUARE("LSB chi-square", "LSB.py", false),
+    TIERED("Chi-square pre-filter, then SVM", "autopsySVC.py", false),
+    SVM_TILED("SVM on native-resolution tiles (experimental, uncalibrated)", "autopsySVC.py", true);  // Model trained on resized images
+
+    private final String displayName;
+    private final String workerScript;
+    private final boolean tiled;
+
+    DetectionMethod(String displayName, String workerScript, boolean tiled) {
+        this.displayName = displayName;
+        this.workerScript = workerScript;
+        this.tiled = tiled;
+    }
+
+    String getDisplayName() {
+        return displayName;
+    }
+
+    String getWorkerScript() {
+        return workerScript;
+    }
+
+    /**
+     * True if images are scored as 512x512 tiles at native resolution instead of being resized,
+     * which only the Python worker does.
+     */
+    boolean isTiled() {
+        return tiled;
+    }
+
+    /**
+     * The bundled model files the worker loads, see ModelStore.
+     */
+    String[] getModelFiles() {
+        return this == CHI_SQUARE ? new String[0] : new String[]{"SVC_model.pkl", "scaler.joblib"};
+    }
+
+    /**
+     * True if the in-JVM SVM engine can stand in for the worker.
+     */
+    boolean usesJavaEngine() {
+        return this == SVM || this == TIERED;
+    }
+}
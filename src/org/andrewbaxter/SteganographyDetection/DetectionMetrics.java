@@ -0,0 +1,247 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+
+/**
+ * Latency, throughput and error metrics of an ingest job, owned by its DetectionJobResults.
+ * Stages record into lock-free histograms from any thread; a background thread samples the
+ * scoring queue depth every second and logs a summary every minute while the job runs.
+ */
+final class DetectionMetrics {
+
+    /**
+     * The timed steps a file goes through, in order.
+     */
+    enum Stage {
+
+        FILTER("Filter (header sniff)"),
+        READ("Read content"),
+        DECODE("Decode"),
+        PRE_FILTER("Chi-square pre-filter"),
+        FEATURES("Feature extraction"),
+        CLASSIFY("Classify (in-JVM)"),
+        WORKER("Python worker batch"),
+        BLACKBOARD("Tag and blackboard"),
+        REPORT("Report");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+    private static final long SUMMARY_INTERVAL_MS = 60000;
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);  // Filled once, then only read
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final AtomicLong peakQueueDepth = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile Collection<?> queue;  // The scoring queue, once the pipeline has started
+    private volatile long lastQueueDepth = 0;
+    private ScheduledExecutorService sampler;
+
+    DetectionMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * The start time to pass to record().
+     */
+    static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time a stage took since startNanos, as returned by now().
+     */
+    void record(Stage stage, long startNanos) {
+        stages.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record a stage timed elsewhere, e.g. by a Python worker.
+     */
+    void recordDuration(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    void recordBytesRead(long count) {
+        bytes.add(count);
+    }
+
+    /**
+     * A file left the scoring pipeline, scored or not.
+     */
+    void recordFileDone() {
+        files.increment();
+    }
+
+    /**
+     * A file could not be read or scored.
+     */
+    void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * A Python worker timed out on a batch.
+     */
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    void watchQueue(Collection<?> queue) {
+        this.queue = queue;
+    }
+
+    synchronized void start(final long jobId) {
+        sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SteganographyDetection-metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sampler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sampleQueueDepth();
+            }
+        }, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        sampler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                logger.log(Level.INFO, "Steganography detection job {0}: {1}", new Object[]{jobId, getSummary()});
+            }
+        }, SUMMARY_INTERVAL_MS, SUMMARY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void close() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+    }
+
+    private void sampleQueueDepth() {
+        Collection<?> watched = queue;
+        if (watched == null) {
+            return;
+        }
+        long depth = watched.size();
+        lastQueueDepth = depth;
+        if (depth > peakQueueDepth.get()) {
+            peakQueueDepth.set(depth);  // Only the sampler thread writes it
+        }
+    }
+
+    LatencyHistogram getHistogram(Stage stage) {
+        return stages.get(stage);
+    }
+
+    long getFiles() {
+        return files.sum();
+    }
+
+    long getBytes() {
+        return bytes.sum();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    long getQueueDepth() {
+        return lastQueueDepth;
+    }
+
+    long getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    double getFilesPerSecond() {
+        double elapsed = getElapsedSeconds();
+        return elapsed <= 0 ? 0 : files.sum() / elapsed;
+    }
+
+    double getBytesPerSecond() {
+        double elapsed = getElapsedSeconds();
+        return elapsed <= 0 ? 0 : bytes.sum() / elapsed;
+    }
+
+    /**
+     * One line for the ingest log: throughput, queue, errors and the latency of every stage that ran.
+     */
+    String getSummary() {
+        StringBuilder summary = new StringBuilder(String.format("%d files (%.1f/s), %.1f MB read (%.1f MB/s), queue %d (peak %d), %d errors, %d timeouts",
+                getFiles(), getFilesPerSecond(), getBytes() / 1048576.0, getBytesPerSecond() / 1048576.0,
+                getQueueDepth(), getPeakQueueDepth(), getErrors(), getTimeouts()));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stages.get(stage);
+            if (histogram.getCount() > 0) {
+                summary.append(String.format("; %s n=%d p50=%.2fms p99=%.2fms max=%.2fms", stage.getDisplayName(), histogram.getCount(),
+                        toMillis(histogram.getPercentileNanos(50)), toMillis(histogram.getPercentileNanos(99)), toMillis(histogram.getMaxNanos())));
+            }
+        }
+        return summary.toString();
+    }
+
+    static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
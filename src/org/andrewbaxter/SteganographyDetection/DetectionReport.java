@@ -0,0 +1,449 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtilities; // Note: In newer versions, this might be ChartUtils
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.general.DefaultPieDataset;
+import org.jfree.data.general.PieDataset;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+
+/**
+ * The report written to the case export directory when a job finishes, whichever kind of
+ * ingest module ran it: paginated HTML with or without a pie chart, or CSV. Hits are ranked
+ * most confident first (see RankedFindings) and read back from the job's findings log one
+ * at a time, so large cases don't have to fit in memory. Files that could not be scored are
+ * listed apart from the hits.
+ */
+final class DetectionReport {
+
+    private static final int PAGE_SIZE = 1000;  // Hits per HTML page, more makes browsers crawl
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+
+    // Sorts the rows of a hits page by a column, toggling between ascending and descending
+    private static final String SORT_SCRIPT = "<script>"
+            + "function sortHits(column, numeric) {"
+            + " var table = document.getElementById('hits'); var body = table.tBodies[0];"
+            + " var rows = Array.prototype.slice.call(body.rows);"
+            + " var ascending = table.getAttribute('data-sorted') !== column + 'a';"
+            + " rows.sort(function (a, b) {"
+            + "  var x = a.cells[column].textContent, y = b.cells[column].textContent;"
+            + "  if (numeric) { x = x === '' ? -Infinity : parseFloat(x); y = y === '' ? -Infinity : parseFloat(y); }"
+            + "  return (x < y ? -1 : x > y ? 1 : 0) * (ascending ? 1 : -1);"
+            + " });"
+            + " for (var i = 0; i < rows.length; i++) { body.appendChild(rows[i]); }"
+            + " table.setAttribute('data-sorted', column + (ascending ? 'a' : 'd'));"
+            + "}"
+            + "</script>";
+
+    private DetectionReport() {
+    }
+
+    /**
+     * Write the report of a finished job in the job's format, then log the job's metrics.
+     * The findings log is always copied next to it as the machine-readable export.
+     * For the tiered method the pre-filter's stage rates are also logged.
+     */
+    static void write(DetectionJobResults jobResults, SteganographyDetectionJobSettings settings) {
+        long start = DetectionMetrics.now();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss");
+        String timestamp = dateFormat.format(new Date());
+        String exportDirectory = Case.getCurrentCase().getExportDirectory() + File.separator;
+        String reportPath = exportDirectory + "SteganographyDetectionReport_" + timestamp;
+
+        try {
+            Files.copy(jobResults.getFindingsFile().toPath(), Paths.get(reportPath + "_findings.jsonl"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error exporting the findings log " + jobResults.getFindingsFile(), e);
+        }
+
+        switch (settings.getReportFormat()) {
+            case CSV:
+                generateCsv(reportPath + ".csv", jobResults);
+                generateFailuresCsv(reportPath + "_failures.csv", reportPath + "_failure_counts.csv", jobResults);
+                break;
+            case HTML:
+                generateReport(reportPath + ".html", null, jobResults);
+                break;
+            default:
+                String pieChartFileName = "pieChart_" + timestamp + ".png";
+                Thread chart = startPieChart(exportDirectory + pieChartFileName, jobResults);  // Rendered while the pages stream
+                generateReport(reportPath + ".html", pieChartFileName, jobResults);
+                try {
+                    chart.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                break;
+        }
+
+        if (settings.getDetectionMethod() == DetectionMethod.TIERED) {
+            logStageRates(jobResults);
+        }
+        DetectionMetrics metrics = jobResults.getMetrics();
+        metrics.record(DetectionMetrics.Stage.REPORT, start);
+        logger.log(Level.INFO, "Steganography detection finished: " + metrics.getSummary());
+    }
+
+    private static Thread startPieChart(final String imagePath, final DetectionJobResults jobResults) {
+        Thread chart = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    generatePieChart(imagePath, jobResults);
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.SEVERE, "Error generating the pie chart", e);
+                }
+            }
+        }, "SteganographyDetection-chart");
+        chart.setDaemon(true);
+        chart.start();
+        return chart;
+    }
+
+    // One row per suspected file, most confident first
+    private static void generateCsv(String reportPath, DetectionJobResults jobResults) {
+        try (RankedFindings findings = new RankedFindings(jobResults.getFindingsFile());
+                BufferedWriter writer = Files.newBufferedWriter(Paths.get(reportPath), StandardCharsets.UTF_8)) {
+            writer.write("rank,object_id,path,md5,score,method,stage,location,elapsed_ms");
+            writer.newLine();
+            int rank = 0;
+            SuspectedFile file;
+            while ((file = findings.next()) != null) {
+                writer.write(++rank + "," + file.getObjectId() + "," + csvField(file.getFilePath()) + "," + csvField(file.getMd5()) + ","
+                        + (Double.isNaN(file.getScore()) ? "" : Double.toString(file.getScore())) + ","
+                        + csvField(file.getDetectionMethod()) + "," + csvField(file.getDetectionStage()) + ","
+                        + csvField(file.getLocation()) + "," + file.getElapsedMillis());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error generating CSV report", e);
+        }
+    }
+
+    // The first files that failed, and the failure counts by error with the retry counts
+    private static void generateFailuresCsv(String listPath, String countsPath, DetectionJobResults jobResults) {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(listPath), StandardCharsets.UTF_8)) {
+            writer.write("object_id,path,error,attempts");
+            writer.newLine();
+            for (DetectionJobResults.Failure failure : jobResults.getListedFailures()) {
+                writer.write(failure.getObjectId() + "," + csvField(failure.getFilePath()) + ","
+                        + csvField(failure.getError().getDisplayName()) + "," + failure.getAttempts());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error generating the CSV list of failures", e);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(countsPath), StandardCharsets.UTF_8)) {
+            writer.write("metric,files");
+            writer.newLine();
+            writer.write("Failed," + jobResults.getSkipped(SkipReason.NOT_SCORED));
+            writer.newLine();
+            for (ScoringError error : ScoringError.values()) {
+                writer.write(csvField("Failed: " + error.getDisplayName()) + "," + jobResults.getFailures(error));
+                writer.newLine();
+            }
+            writer.write("Listed in the failures CSV," + jobResults.getListedFailures().size());
+            writer.newLine();
+            writer.write("Retried after a worker error," + jobResults.getRetried());
+            writer.newLine();
+            writer.write("Retried and then scored," + jobResults.getRecovered());
+            writer.newLine();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error generating the CSV failure counts", e);
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Write the summary page to reportPath and the hits, PAGE_SIZE to a page and most confident
+     * first, to pages next to it. Only one hit is in memory at a time.
+     */
+    static void generateReport(String reportPath, String pieChartFileName, DetectionJobResults jobResults) {
+        File reportFile = new File(reportPath);
+        String pageBaseName = reportFile.getName().replaceFirst("\\.html$", "") + "_hits_";
+        int pages;
+        try {
+            pages = writeHitPages(reportFile.getParentFile(), pageBaseName, reportFile.getName(), jobResults);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error generating the HTML report pages", e);
+            pages = 0;
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+            writeHead(writer, "Steganography Detection Report");
+            writer.write("<h1>Steganography Detection Report</h1>");
+            writer.write("<p>Generated on: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + "</p>");
+            writer.write("<h2>Summary</h2>");
+            long totalFilesProcessed = jobResults.getProcessed();
+            long imagesFound = totalFilesProcessed + jobResults.getSkipped();
+            writer.write("<p>Total files processed: " + totalFilesProcessed + "</p>");
+            writer.write("<p>Of which unchanged since an earlier ingest job and not rescored: " + jobResults.getRestored() + "</p>");
+            writer.write("<p>Files skipped (unreadable or not decodable): " + jobResults.getSkipped() + "</p>");
+            writer.write("<p>Coverage: " + (imagesFound == 0 ? "100" : String.format("%.1f", 100.0 * totalFilesProcessed / imagesFound)) + "% of " + imagesFound + " images scanned</p>");
+            writer.write("<p>Files suspected of containing steganography: " + jobResults.getSuspected() + "</p>");
+            if (jobResults.getUnlogged() > 0) {
+                writer.write("<p>Suspected files missing from the findings log (see the ingest log): " + jobResults.getUnlogged() + "</p>");
+            }
+            writer.write("<h2>Skipped files</h2><ul>");
+            for (SkipReason reason : SkipReason.values()) {
+                writer.write("<li>" + escapeHtml(reason.getDisplayName()) + ": " + jobResults.getSkipped(reason) + "</li>");
+            }
+            writer.write("</ul>");
+            writer.write("<p>Verdict cache: " + jobResults.getCacheHits() + " hits, " + jobResults.getCacheMisses() + " misses</p>");
+            writeFailures(writer, jobResults);
+            if (pieChartFileName != null) {
+                writer.write("<img src='" + escapeHtml(pieChartFileName) + "' alt='Pie Chart'/>");
+            }
+            writeMetrics(writer, jobResults.getMetrics());
+            writer.write("<h2>Suspected files</h2>");
+            if (pages == 0) {
+                writer.write("<p>None</p>");
+            } else {
+                writer.write("<p>Ranked by stage, pre-filter hits first, then by score, most suspicious first.</p><ul>");
+                for (int page = 1; page <= pages; page++) {
+                    writer.write("<li><a href='" + escapeHtml(pageName(pageBaseName, page)) + "'>Page " + page + "</a></li>");
+                }
+                writer.write("</ul>");
+            }
+            writer.write("</body></html>");
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error generating HTML report", e);
+        }
+    }
+
+    // Returns the number of pages written
+    private static int writeHitPages(File directory, String pageBaseName, String indexName, DetectionJobResults jobResults) throws IOException {
+        int pages = 0;
+        int row = 0;
+        BufferedWriter page = null;
+        try (RankedFindings findings = new RankedFindings(jobResults.getFindingsFile())) {
+            SuspectedFile file;
+            while ((file = findings.next()) != null) {
+                if (row % PAGE_SIZE == 0) {
+                    if (page != null) {
+                        endHitPage(page, pageBaseName, indexName, pages, true);
+                    }
+                    pages++;
+                    page = Files.newBufferedWriter(new File(directory, pageName(pageBaseName, pages)).toPath(), StandardCharsets.UTF_8);
+                    startHitPage(page, pages);
+                }
+                row++;
+                page.write("<tr><td>" + row + "</td><td>" + escapeHtml(file.getFilePath()) + "</td><td>"
+                        + (Double.isNaN(file.getScore()) ? "" : String.format("%.4f", file.getScore())) + "</td><td>"
+                        + escapeHtml(file.getDetectionMethod()) + "</td><td>" + escapeHtml(file.getDetectionStage()) + "</td><td>"
+                        + escapeHtml(file.getLocation()) + "</td><td>" + escapeHtml(file.getMd5()) + "</td><td>"
+                        + file.getObjectId() + "</td><td>" + file.getElapsedMillis() + "</td></tr>");
+                page.newLine();
+            }
+            if (page != null) {
+                endHitPage(page, pageBaseName, indexName, pages, false);
+                page = null;
+            }
+        } finally {
+            if (page != null) {
+                page.close();
+            }
+        }
+        return pages;
+    }
+
+    private static String pageName(String pageBaseName, int page) {
+        return String.format("%s%04d.html", pageBaseName, page);
+    }
+
+    private static void startHitPage(BufferedWriter page, int number) throws IOException {
+        writeHead(page, "Suspected files, page " + number);
+        page.write("<h1>Suspected files, page " + number + "</h1><p>Click a column heading to sort this page.</p>");
+        page.write("<table id='hits'><thead><tr>");
+        String[] columns = {"Rank", "Path", "Score", "Method", "Stage", "Likely location", "MD5", "Object ID", "Elapsed (ms)"};
+        boolean[] numeric = {true, false, true, false, false, false, false, true, true};
+        for (int column = 0; column < columns.length; column++) {
+            page.write("<th onclick='sortHits(" + column + ", " + numeric[column] + ")'>" + columns[column] + "</th>");
+        }
+        page.write("</tr></thead><tbody>");
+        page.newLine();
+    }
+
+    private static void endHitPage(BufferedWriter page, String pageBaseName, String indexName, int number, boolean hasNext) throws IOException {
+        page.write("</tbody></table><p>");
+        if (number > 1) {
+            page.write("<a href='" + escapeHtml(pageName(pageBaseName, number - 1)) + "'>Previous</a> | ");
+        }
+        page.write("<a href='" + escapeHtml(indexName) + "'>Summary</a>");
+        if (hasNext) {
+            page.write(" | <a href='" + escapeHtml(pageName(pageBaseName, number + 1)) + "'>Next</a>");
+        }
+        page.write("</p>" + SORT_SCRIPT + "</body></html>");
+        page.close();
+    }
+
+    // Counts by error, then the first files that failed
+    private static void writeFailures(BufferedWriter writer, DetectionJobResults jobResults) throws IOException {
+        writer.write("<h2>Files that could not be scored</h2>");
+        long failed = jobResults.getSkipped(SkipReason.NOT_SCORED);
+        writer.write("<p>" + failed + " files failed; " + jobResults.getRetried() + " were retried after a worker error, "
+                + jobResults.getRecovered() + " of them then scored.</p>");
+        if (failed == 0) {
+            return;
+        }
+        writer.write("<ul>");
+        for (ScoringError error : ScoringError.values()) {
+            long count = jobResults.getFailures(error);
+            if (count > 0) {
+                writer.write("<li>" + escapeHtml(error.getDisplayName()) + ": " + count + "</li>");
+            }
+        }
+        writer.write("</ul>");
+        writer.write("<table><tr><th>Object ID</th><th>Path</th><th>Error</th><th>Attempts</th></tr>");
+        for (DetectionJobResults.Failure failure : jobResults.getListedFailures()) {
+            writer.write("<tr><td>" + failure.getObjectId() + "</td><td>" + escapeHtml(failure.getFilePath()) + "</td><td>"
+                    + escapeHtml(failure.getError().getDisplayName()) + "</td><td>" + failure.getAttempts() + "</td></tr>");
+        }
+        writer.write("</table>");
+        if (failed > DetectionJobResults.MAX_LISTED_FAILURES) {
+            writer.write("<p>Only the first " + DetectionJobResults.MAX_LISTED_FAILURES + " are listed, see the ingest log for the rest.</p>");
+        }
+    }
+
+    private static void writeHead(BufferedWriter writer, String title) throws IOException {
+        writer.write("<!DOCTYPE html><html><head><meta charset='UTF-8'><title>" + escapeHtml(title) + "</title>");
+        // Adding some basic CSS
+        writer.write("<style>");
+        writer.write("body { font-family: Arial, sans-serif; margin: 40px; }");
+        writer.write("h1, h2 { color: navy; }");
+        writer.write("p { font-size: 16px; }");
+        writer.write("ul { background-color: #f8f8f8; padding: 20px; }");
+        writer.write("li { margin: 10px 0; }");
+        writer.write("img { display: block; margin-top: 20px; max-width: 100%; height: auto; border: 1px solid #ccc; padding: 5px; }");
+        writer.write("table { border-collapse: collapse; } td, th { border: 1px solid #ccc; padding: 4px; } th { cursor: pointer; background-color: #f0f0f0; }");
+        writer.write("</style>");
+        writer.write("</head><body>");
+    }
+
+    static String escapeHtml(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                case '\'':
+                    escaped.append("&#39;");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    // Throughput, errors and a latency row per stage that ran; the report's own time is only logged
+    private static void writeMetrics(BufferedWriter writer, DetectionMetrics metrics) throws IOException {
+        writer.write("<h2>Performance</h2>");
+        writer.write(String.format("<p>%d files in %.1f s (%.1f files/s), %.1f MB read (%.1f MB/s)</p>",
+                metrics.getFiles(), metrics.getElapsedSeconds(), metrics.getFilesPerSecond(),
+                metrics.getBytes() / 1048576.0, metrics.getBytesPerSecond() / 1048576.0));
+        writer.write("<p>Scoring queue peak depth: " + metrics.getPeakQueueDepth() + ", errors: " + metrics.getErrors()
+                + ", worker timeouts: " + metrics.getTimeouts() + "</p>");
+        writer.write("<table border='1' cellpadding='4' style='border-collapse: collapse'>");
+        writer.write("<tr><th>Stage</th><th>Count</th><th>Mean (ms)</th><th>p50 (ms)</th><th>p90 (ms)</th><th>p99 (ms)</th><th>Max (ms)</th></tr>");
+        for (DetectionMetrics.Stage stage : DetectionMetrics.Stage.values()) {
+            LatencyHistogram histogram = metrics.getHistogram(stage);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            writer.write(String.format("<tr><td>%s</td><td>%d</td><td>%.2f</td><td>%.2f</td><td>%.2f</td><td>%.2f</td><td>%.2f</td></tr>",
+                    stage.getDisplayName(), histogram.getCount(), DetectionMetrics.toMillis(histogram.getMeanNanos()),
+                    DetectionMetrics.toMillis(histogram.getPercentileNanos(50)), DetectionMetrics.toMillis(histogram.getPercentileNanos(90)),
+                    DetectionMetrics.toMillis(histogram.getPercentileNanos(99)), DetectionMetrics.toMillis(histogram.getMaxNanos())));
+        }
+        writer.write("</table>");
+    }
+
+    static void generatePieChart(String imagePath, DetectionJobResults jobResults) throws IOException {
+        PieDataset dataset = createDataset(jobResults);
+        JFreeChart chart = ChartFactory.createPieChart(
+            "Steganography Detection Summary",
+            dataset,
+            true,
+            true,
+            false);
+        ChartUtilities.saveChartAsPNG(new File(imagePath), chart, 500, 300);
+    }
+
+    private static PieDataset createDataset(DetectionJobResults jobResults) {
+        DefaultPieDataset dataset = new DefaultPieDataset();
+        long suspectedFilesCount = jobResults.getSuspected();
+        dataset.setValue("Files with Steganography", suspectedFilesCount);
+        dataset.setValue("Other Files", jobResults.getProcessed() - suspectedFilesCount);
+        return dataset;
+    }
+
+    private static void logStageRates(DetectionJobResults jobResults) {
+        long screenedCount = jobResults.getScreened();
+        long screenedCleanCount = jobResults.getScreenedClean();
+        long screenedSuspectedCount = jobResults.getScreenedSuspected();
+        long unscreenedCount = jobResults.getUnscreened();
+        long passedOn = screenedCount - screenedCleanCount - screenedSuspectedCount;
+        logger.log(Level.INFO, String.format("Pre-filter screened %d images: %d clean, %d suspected, %d (%.1f%%) passed to the SVM; %d could not be screened",
+                screenedCount, screenedCleanCount, screenedSuspectedCount, passedOn,
+                screenedCount == 0 ? 0.0 : 100.0 * passedOn / screenedCount, unscreenedCount));
+    }
+}
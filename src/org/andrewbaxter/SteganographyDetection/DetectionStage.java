@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+/**
+ * Which part of the pipeline decided a verdict. Scores are only comparable between stages
+ * on the same scale: the pre-filter's p-values, or the job's classifier scores, which the
+ * cache and the ledger hand back unchanged.
+ */
+enum DetectionStage {
+
+    PRE_FILTER("Chi-square pre-filter", 0),
+    CLASSIFIER("Classifier", 1),
+    TILE_CLASSIFIER("Classifier on tiles (uncalibrated)", 1),
+    CACHE("Verdict cache", 1),
+    LEDGER_PRE_FILTER("Chi-square pre-filter, earlier ingest job", 0),
+    LEDGER("Earlier ingest job", 1);
+
+    static final int UNKNOWN_SCALE = 2;  // For stage names no longer in use
+
+    private final String displayName;
+    private final int scale;
+
+    DetectionStage(String displayName, int scale) {
+        this.displayName = displayName;
+        this.scale = scale;
+    }
+
+    String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * The scale of a stage's scores by its display name, the pre-filter's first in pipeline order.
+     */
+    static int getScale(String displayName) {
+        for (DetectionStage stage : values()) {
+            if (stage.displayName.equals(displayName)) {
+                return stage.scale;
+            }
+        }
+        return UNKNOWN_SCALE;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The hits of an ingest job, appended as JSON Lines (one flat object per hit) while the job
+ * runs, so memory does not grow with the number of hits and the findings survive a crash.
+ * The report is streamed from this file when the job finishes, and a copy of it is the
+ * job's machine-readable export.
+ */
+final class FindingsLog implements Closeable {
+
+    private static final int FLUSH_EVERY = 100;  // Hits, a crash loses at most this many
+
+    private final File file;
+    private final BufferedWriter writer;
+    private int unflushed = 0;
+
+    FindingsLog(File file) throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        this.file = file;
+        this.writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    synchronized void append(SuspectedFile finding) throws IOException {
+        writer.write(toJson(finding));
+        writer.newLine();
+        if (++unflushed >= FLUSH_EVERY) {
+            writer.flush();
+            unflushed = 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    static String toJson(SuspectedFile finding) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"objId\":").append(finding.getObjectId());
+        json.append(",\"path\":");
+        appendString(json, finding.getFilePath());
+        json.append(",\"md5\":");
+        appendString(json, finding.getMd5());
+        json.append(",\"score\":");
+        double score = finding.getScore();
+        json.append(Double.isNaN(score) || Double.isInfinite(score) ? "null" : Double.toString(score));
+        json.append(",\"method\":");
+        appendString(json, finding.getDetectionMethod());
+        json.append(",\"stage\":");
+        appendString(json, finding.getDetectionStage());
+        json.append(",\"location\":");
+        appendString(json, finding.getLocation());
+        json.append(",\"elapsedMs\":").append(finding.getElapsedMillis());
+        return json.append('}').toString();
+    }
+
+    /**
+     * Read back a line written by append(). Throws IllegalArgumentException for anything else.
+     */
+    static SuspectedFile parse(String line) {
+        Map<String, String> fields = parseObject(line);
+        String score = fields.get("score");
+        return new SuspectedFile(Long.parseLong(fields.get("objId")), fields.get("path"), fields.get("md5"),
+                score == null ? Double.NaN : Double.parseDouble(score), fields.get("method"), fields.get("stage"),
+                fields.get("location"), Long.parseLong(fields.get("elapsedMs")));
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    // Flat objects only: string, number and null values, which is all toJson() writes
+    private static Map<String, String> parseObject(String line) {
+        Map<String, String> fields = new HashMap<>();
+        int[] position = {skipWhitespace(line, 0)};
+        expect(line, position, '{');
+        while (true) {
+            position[0] = skipWhitespace(line, position[0]);
+            if (line.charAt(position[0]) == '}') {
+                return fields;
+            }
+            String key = readString(line, position);
+            position[0] = skipWhitespace(line, position[0]);
+            expect(line, position, ':');
+            position[0] = skipWhitespace(line, position[0]);
+            String value;
+            if (line.charAt(position[0]) == '"') {
+                value = readString(line, position);
+            } else {
+                int end = position[0];
+                while (end < line.length() && ",} \t".indexOf(line.charAt(end)) < 0) {
+                    end++;
+                }
+                value = line.substring(position[0], end);
+                position[0] = end;
+                if ("null".equals(value)) {
+                    value = null;
+                }
+            }
+            fields.put(key, value);
+            position[0] = skipWhitespace(line, position[0]);
+            if (line.charAt(position[0]) == ',') {
+                position[0]++;
+            }
+        }
+    }
+
+    private static String readString(String line, int[] position) {
+        expect(line, position, '"');
+        StringBuilder value = new StringBuilder();
+        int i = position[0];
+        while (true) {
+            char c = line.charAt(i++);
+            if (c == '"') {
+                break;
+            }
+            if (c == '\\') {
+                char escaped = line.charAt(i++);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        value.append((char) Integer.parseInt(line.substring(i, i + 4), 16));
+                        i += 4;
+                        break;
+                    default:
+                        value.append(escaped);  // \" \\ \/
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        position[0] = i;
+        return value.toString();
+    }
+
+    private static void expect(String line, int[] position, char expected) {
+        if (position[0] >= line.length() || line.charAt(position[0]) != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' at " + position[0] + " in findings line: " + line);
+        }
+        position[0]++;
+    }
+
+    private static int skipWhitespace(String line, int position) {
+        while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+}
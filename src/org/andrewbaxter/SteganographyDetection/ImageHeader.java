@@ -0,0 +1,285 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * The format and dimensions of an image, worked out from its first bytes rather than its name
+ * so renamed images are still found and nothing has to be decoded to gate on size.
+ */
+final class ImageHeader {
+
+    enum Format {
+        PNG(".png"),
+        JPEG(".jpg"),
+        BMP(".bmp"),
+        GIF(".gif"),
+        PGM(".pgm"),
+        TIFF(".tif"),
+        DNG(".dng");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * The extension the Python scorers decide how to decode by.
+         */
+        String getExtension() {
+            return extension;
+        }
+    }
+
+    static final int UNKNOWN = -1;  // Dimensions the header did not give
+    static final int SNIFF_BYTES = 512;
+    private static final int MAX_JPEG_SEGMENTS = 64;
+    private static final int MAX_TIFF_ENTRIES = 512;
+    private static final int TIFF_IMAGE_WIDTH = 256;
+    private static final int TIFF_IMAGE_LENGTH = 257;
+    private static final int TIFF_SUB_IFDS = 330;
+    private static final int TIFF_DNG_VERSION = 50706;
+
+    private final Format format;
+    private final int width;
+    private final int height;
+
+    private ImageHeader(Format format, int width, int height) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+    Format getFormat() {
+        return format;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    boolean hasDimensions() {
+        return width != UNKNOWN && height != UNKNOWN;
+    }
+
+    /**
+     * Sniff the format and dimensions of an image, using buffer (at least SNIFF_BYTES long) for
+     * the first bytes. Returns null if the content is not one of the supported formats.
+     */
+    static ImageHeader read(Content content, byte[] buffer) throws TskCoreException {
+        int length = content.read(buffer, 0, Math.min(buffer.length, SNIFF_BYTES));
+        if (length < 8) {
+            return null;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+        int b0 = buffer[0] & 0xff;
+        int b1 = buffer[1] & 0xff;
+
+        if (b0 == 0x89 && buffer[1] == 'P' && buffer[2] == 'N' && buffer[3] == 'G') {
+            // IHDR is always the first chunk
+            return length >= 24
+                    ? new ImageHeader(Format.PNG, bytes.getInt(16), bytes.getInt(20))
+                    : new ImageHeader(Format.PNG, UNKNOWN, UNKNOWN);
+        }
+        if (b0 == 0xff && b1 == 0xd8 && (buffer[2] & 0xff) == 0xff) {
+            return readJpeg(content);
+        }
+        if (buffer[0] == 'G' && buffer[1] == 'I' && buffer[2] == 'F' && buffer[3] == '8') {
+            bytes.order(ByteOrder.LITTLE_ENDIAN);
+            return new ImageHeader(Format.GIF, bytes.getShort(6) & 0xffff, bytes.getShort(8) & 0xffff);
+        }
+        if (buffer[0] == 'B' && buffer[1] == 'M' && length >= 26) {
+            bytes.order(ByteOrder.LITTLE_ENDIAN);
+            if (bytes.getInt(14) == 12) {  // OS/2 header with 16-bit dimensions
+                return new ImageHeader(Format.BMP, bytes.getShort(18) & 0xffff, bytes.getShort(20) & 0xffff);
+            }
+            return new ImageHeader(Format.BMP, Math.abs(bytes.getInt(18)), Math.abs(bytes.getInt(22)));  // Negative height is top-down
+        }
+        if (buffer[0] == 'P' && (buffer[1] == '2' || buffer[1] == '5') && isWhitespace(buffer[2])) {
+            return readPgm(buffer, length);
+        }
+        if ((buffer[0] == 'I' && buffer[1] == 'I' && buffer[2] == 42 && buffer[3] == 0)
+                || (buffer[0] == 'M' && buffer[1] == 'M' && buffer[2] == 0 && buffer[3] == 42)) {
+            return readTiff(content, buffer[0] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        }
+        return null;
+    }
+
+    /**
+     * Walk the marker segments up to the first start of frame, reading only segment headers.
+     */
+    private static ImageHeader readJpeg(Content content) throws TskCoreException {
+        byte[] segment = new byte[9];
+        long offset = 2;
+        for (int i = 0; i < MAX_JPEG_SEGMENTS; i++) {
+            if (content.read(segment, offset, segment.length) < 4 || (segment[0] & 0xff) != 0xff) {
+                break;
+            }
+            int marker = segment[1] & 0xff;
+            if (marker == 0xff) {
+                offset++;  // Fill byte
+                continue;
+            }
+            if (marker == 0xd8 || marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+                offset += 2;  // No length
+                continue;
+            }
+            if (marker == 0xd9 || marker == 0xda) {
+                break;  // End of image or start of scan before any frame header
+            }
+            int segmentLength = ((segment[2] & 0xff) << 8) | (segment[3] & 0xff);
+            boolean startOfFrame = marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc;
+            if (startOfFrame) {
+                int height = ((segment[5] & 0xff) << 8) | (segment[6] & 0xff);
+                int width = ((segment[7] & 0xff) << 8) | (segment[8] & 0xff);
+                return new ImageHeader(Format.JPEG, width, height);
+            }
+            offset += 2 + segmentLength;
+        }
+        return new ImageHeader(Format.JPEG, UNKNOWN, UNKNOWN);
+    }
+
+    // "P5 <width> <height> <maxval>" with whitespace and # comments between the fields
+    private static ImageHeader readPgm(byte[] buffer, int length) {
+        int[] fields = new int[2];
+        int position = 2;
+        for (int field = 0; field < fields.length; field++) {
+            while (position < length && (isWhitespace(buffer[position]) || buffer[position] == '#')) {
+                if (buffer[position] == '#') {
+                    while (position < length && buffer[position] != '\n' && buffer[position] != '\r') {
+                        position++;
+                    }
+                } else {
+                    position++;
+                }
+            }
+            int value = 0;
+            int digits = 0;
+            while (position < length && buffer[position] >= '0' && buffer[position] <= '9' && digits < 9) {
+                value = value * 10 + (buffer[position] - '0');
+                position++;
+                digits++;
+            }
+            if (digits == 0) {
+                return new ImageHeader(Format.PGM, UNKNOWN, UNKNOWN);
+            }
+            fields[field] = value;
+        }
+        return new ImageHeader(Format.PGM, fields[0], fields[1]);
+    }
+
+    /**
+     * Read the dimensions from the first IFD, or for a DNG the largest of the first IFD and its
+     * sub-IFDs since the first IFD of a DNG is usually a small preview.
+     */
+    private static ImageHeader readTiff(Content content, ByteOrder order) throws TskCoreException {
+        byte[] word = new byte[4];
+        if (content.read(word, 4, 4) < 4) {
+            return new ImageHeader(Format.TIFF, UNKNOWN, UNKNOWN);
+        }
+        long ifdOffset = ByteBuffer.wrap(word).order(order).getInt() & 0xffffffffL;
+        TiffIfd first = readIfd(content, order, ifdOffset);
+        if (first == null) {
+            return new ImageHeader(Format.TIFF, UNKNOWN, UNKNOWN);
+        }
+        if (!first.dng) {
+            return new ImageHeader(Format.TIFF, first.width, first.height);
+        }
+        int width = first.width;
+        int height = first.height;
+        for (long subIfdOffset : first.subIfds) {
+            TiffIfd sub = readIfd(content, order, subIfdOffset);
+            if (sub != null && (long) sub.width * sub.height > (long) width * height) {
+                width = sub.width;
+                height = sub.height;
+            }
+        }
+        return new ImageHeader(Format.DNG, width, height);
+    }
+
+    private static TiffIfd readIfd(Content content, ByteOrder order, long offset) throws TskCoreException {
+        byte[] countBytes = new byte[2];
+        if (offset <= 0 || content.read(countBytes, offset, 2) < 2) {
+            return null;
+        }
+        int count = Math.min(ByteBuffer.wrap(countBytes).order(order).getShort() & 0xffff, MAX_TIFF_ENTRIES);
+        byte[] entries = new byte[count * 12];
+        int read = content.read(entries, offset + 2, entries.length);
+        ByteBuffer ifd = ByteBuffer.wrap(entries, 0, Math.max(read, 0)).order(order);
+        TiffIfd result = new TiffIfd();
+        for (int i = 0; i + 12 <= read; i += 12) {
+            int tag = ifd.getShort(i) & 0xffff;
+            int type = ifd.getShort(i + 2) & 0xffff;
+            int valueCount = ifd.getInt(i + 4);
+            // SHORT values sit in the first two bytes of the value field, LONG values fill it
+            long value = type == 3 ? ifd.getShort(i + 8) & 0xffff : ifd.getInt(i + 8) & 0xffffffffL;
+            if (tag == TIFF_IMAGE_WIDTH) {
+                result.width = (int) Math.min(value, Integer.MAX_VALUE);
+            } else if (tag == TIFF_IMAGE_LENGTH) {
+                result.height = (int) Math.min(value, Integer.MAX_VALUE);
+            } else if (tag == TIFF_DNG_VERSION) {
+                result.dng = true;
+            } else if (tag == TIFF_SUB_IFDS && (type == 4 || type == 13)) {
+                result.subIfds = readOffsets(content, order, value, valueCount);
+            }
+        }
+        return result;
+    }
+
+    private static long[] readOffsets(Content content, ByteOrder order, long value, int count) throws TskCoreException {
+        count = Math.max(0, Math.min(count, 16));
+        if (count <= 1) {
+            return count == 1 ? new long[]{value} : new long[0];  // A single offset is stored inline
+        }
+        byte[] raw = new byte[count * 4];
+        int read = content.read(raw, value, raw.length);
+        long[] offsets = new long[Math.max(read, 0) / 4];
+        ByteBuffer buffer = ByteBuffer.wrap(raw).order(order);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = buffer.getInt(i * 4) & 0xffffffffL;
+        }
+        return offsets;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static class TiffIfd {
+
+        int width = UNKNOWN;
+        int height = UNKNOWN;
+        boolean dng = false;
+        long[] subIfds = new long[0];
+    }
+}
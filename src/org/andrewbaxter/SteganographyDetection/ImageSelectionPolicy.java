@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Which files a job scans, decided from the MIME type and the image header before any
+ * content is read or decoded.
+ */
+final class ImageSelectionPolicy {
+
+    static final int DEFAULT_MIN_DIMENSION = 64;  // Icons and thumbnails carry too few pixels to score
+    static final long DEFAULT_MAX_PIXELS = 100L * 1000 * 1000;
+    static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;  // Larger files are skipped rather than read into memory
+    static final long MAX_SUPPORTED_BYTES = 1024L * 1024 * 1024;  // Content is read into a single array
+    private static final String UNKNOWN_MIME_TYPE = "application/octet-stream";
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+
+    private final Set<ImageHeader.Format> formats;
+    private final int minDimension;
+    private final long maxPixels;
+    private final long maxBytes;
+
+    ImageSelectionPolicy(Set<ImageHeader.Format> formats, int minDimension, long maxPixels, long maxBytes) {
+        this.formats = formats.isEmpty() ? EnumSet.noneOf(ImageHeader.Format.class) : EnumSet.copyOf(formats);
+        this.minDimension = minDimension;
+        this.maxPixels = maxPixels;
+        this.maxBytes = Math.min(maxBytes, MAX_SUPPORTED_BYTES);
+    }
+
+    static ImageSelectionPolicy defaults() {
+        return new ImageSelectionPolicy(EnumSet.allOf(ImageHeader.Format.class), DEFAULT_MIN_DIMENSION, DEFAULT_MAX_PIXELS, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Sniff a file and return its header if it should be scanned, otherwise record why it was
+     * skipped and return null. Images are recognized by their header, not their name, so renamed
+     * images are still scanned. headerBuffer must hold ImageHeader.SNIFF_BYTES.
+     */
+    ImageHeader select(AbstractFile file, byte[] headerBuffer, DetectionJobResults results) {
+        long start = DetectionMetrics.now();
+        SkipReason skipReason;
+        ImageHeader header = null;
+        if (isNotImage(file.getMIMEType())) {
+            skipReason = SkipReason.NOT_IMAGE;
+        } else {
+            try {
+                header = file.getSize() > 0 ? ImageHeader.read(file, headerBuffer) : null;
+                skipReason = check(file.getSize(), header);
+            } catch (TskCoreException e) {
+                logger.log(Level.WARNING, "Error reading the header of " + file.getName(), e);
+                skipReason = SkipReason.UNREADABLE;
+            }
+        }
+        results.getMetrics().record(DetectionMetrics.Stage.FILTER, start);
+        if (skipReason != null) {
+            results.recordSkipped(skipReason);
+            return null;
+        }
+        return header;
+    }
+
+    /**
+     * True if the File Type module already identified the file as something other than an image,
+     * so its header does not need to be read.
+     */
+    boolean isNotImage(String mimeType) {
+        return mimeType != null && !mimeType.isEmpty() && !mimeType.startsWith("image/")
+                && !mimeType.equals(UNKNOWN_MIME_TYPE);
+    }
+
+    /**
+     * Why a file with the given size and header should be skipped, or null to scan it.
+     * A null header means the content is not a supported image.
+     */
+    SkipReason check(long size, ImageHeader header) {
+        if (header == null) {
+            return SkipReason.NOT_IMAGE;
+        }
+        if (!formats.contains(header.getFormat())) {
+            return SkipReason.FORMAT_EXCLUDED;
+        }
+        if (size > maxBytes) {
+            return SkipReason.TOO_LARGE;
+        }
+        if (header.hasDimensions()) {
+            if (Math.min(header.getWidth(), header.getHeight()) < minDimension) {
+                return SkipReason.TOO_SMALL;
+            }
+            if ((long) header.getWidth() * header.getHeight() > maxPixels) {
+                return SkipReason.TOO_LARGE;
+            }
+        }
+        return null;
+    }
+
+    Set<ImageHeader.Format> getFormats() {
+        return EnumSet.copyOf(formats);
+    }
+
+    int getMinDimension() {
+        return minDimension;
+    }
+
+    long getMaxPixels() {
+        return maxPixels;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+}
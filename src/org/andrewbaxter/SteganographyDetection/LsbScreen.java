@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+/**
+ * Cheap first stage of the tiered pipeline: the Westfeld-Pfitzmann pair-of-values
+ * chi-square test on each colour channel's histogram. LSB replacement evens out the
+ * counts of each value pair (2k, 2k+1), so a p-value near 0 means the image looks clean
+ * and a p-value near 1 means the pairs are suspiciously even.
+ * Buffers are reused between images, so an instance must only be used by one thread.
+ */
+class LsbScreen {
+
+    static final double DEFAULT_CLEAN_BELOW = 1e-4;
+    static final double DEFAULT_SUSPECTED_ABOVE = 1.0;  // p-values never exceed 1, so by default only the classifier flags files
+    static final String VERSION = "pair-of-values-1";
+
+    enum Decision {
+        CLEAN, SUSPECTED, AMBIGUOUS
+    }
+
+    private final double cleanBelow;
+    private final double suspectedAbove;
+    private final long[] histogram = new long[256];
+    private int[] row = new int[0];
+
+    LsbScreen(double cleanBelow, double suspectedAbove) {
+        this.cleanBelow = cleanBelow;
+        this.suspectedAbove = suspectedAbove;
+    }
+
+    Decision decide(double pValue) {
+        if (pValue < cleanBelow) {
+            return Decision.CLEAN;
+        }
+        if (pValue > suspectedAbove) {
+            return Decision.SUSPECTED;
+        }
+        return Decision.AMBIGUOUS;
+    }
+
+    /**
+     * The largest pair-of-values p-value over the colour channels of the image.
+     */
+    double pairOfValuesPValue(BufferedImage image) {
+        Raster raster = image.getRaster();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int channels = Math.min(raster.getNumBands(), image.getColorModel().getNumColorComponents());
+        if (row.length < width) {
+            row = new int[width];
+        }
+
+        double maxPValue = 0;
+        for (int band = 0; band < Math.max(1, channels); band++) {
+            Arrays.fill(histogram, 0);
+            for (int y = 0; y < height; y++) {
+                raster.getSamples(0, y, width, 1, band, row);
+                for (int x = 0; x < width; x++) {
+                    histogram[row[x] & 0xff]++;
+                }
+            }
+            maxPValue = Math.max(maxPValue, pairOfValuesPValue(histogram));
+        }
+        return maxPValue;
+    }
+
+    static double pairOfValuesPValue(long[] histogram) {
+        double chiSquare = 0;
+        int categories = 0;
+        for (int k = 0; k < 128; k++) {
+            double expected = (histogram[2 * k] + histogram[2 * k + 1]) / 2.0;
+            if (expected > 0) {
+                double difference = histogram[2 * k] - expected;
+                chiSquare += difference * difference / expected;
+                categories++;
+            }
+        }
+        if (categories < 2) {
+            return 0;  // Flat images say nothing about embedding
+        }
+        return regularizedGammaQ((categories - 1) / 2.0, chiSquare / 2.0);
+    }
+
+    // Upper regularized incomplete gamma function, so Q(df / 2, chi^2 / 2) is the chi-square p-value
+    private static double regularizedGammaQ(double a, double x) {
+        if (x <= 0) {
+            return 1.0;
+        }
+        if (x < a + 1) {
+            return 1.0 - gammaSeries(a, x);
+        }
+        return gammaContinuedFraction(a, x);
+    }
+
+    private static double gammaSeries(double a, double x) {
+        double ap = a;
+        double term = 1.0 / a;
+        double sum = term;
+        for (int n = 0; n < 1000; n++) {
+            ap++;
+            term *= x / ap;
+            sum += term;
+            if (Math.abs(term) < Math.abs(sum) * 1e-15) {
+                break;
+            }
+        }
+        return sum * Math.exp(-x + a * Math.log(x) - logGamma(a));
+    }
+
+    private static double gammaContinuedFraction(double a, double x) {
+        double tiny = 1e-300;
+        double b = x + 1 - a;
+        double c = 1 / tiny;
+        double d = 1 / b;
+        double h = d;
+        for (int i = 1; i < 1000; i++) {
+            double an = -i * (i - a);
+            b += 2;
+            d = an * d + b;
+            if (Math.abs(d) < tiny) {
+                d = tiny;
+            }
+            c = b + an / c;
+            if (Math.abs(c) < tiny) {
+                c = tiny;
+            }
+            d = 1 / d;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-15) {
+                break;
+            }
+        }
+        return Math.exp(-x + a * Math.log(x) - logGamma(a)) * h;
+    }
+
+    private static final double[] LANCZOS = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+        -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+
+    private static double logGamma(double x) {
+        double y = x;
+        double tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double series = 1.000000000190015;
+        for (double coefficient : LANCZOS) {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+}
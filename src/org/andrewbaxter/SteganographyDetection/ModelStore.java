@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+import org.sleuthkit.autopsy.ingest.IngestModule.IngestModuleException;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+
+/**
+ * The model files the Python workers load. They ship inside the module next to
+ * models/manifest.properties, which gives the models' version and the SHA-256 of each file
+ * (see scripts/package_models.py). They are extracted once per installation to a directory
+ * named after the version in the user directory, and every worker memory-maps that one copy.
+ */
+final class ModelStore {
+
+    private static final String RESOURCE_DIR = "/org/andrewbaxter/SteganographyDetection/models/";
+    private static final String MANIFEST = "manifest.properties";
+
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+    private static final Set<String> verified = new HashSet<>();  // Paths checked since Autopsy started
+
+    private ModelStore() {
+    }
+
+    /**
+     * The directory holding the named model files, extracting those that are missing or
+     * don't match the manifest. Fails if a file is not bundled or its checksum is wrong.
+     */
+    static synchronized File extract(String[] fileNames) throws IngestModuleException {
+        Properties manifest = loadManifest();
+        String version = manifest.getProperty("version", "");
+        if (!version.matches("[A-Za-z0-9._-]+")) {
+            throw new IngestModuleException("The model manifest has no valid version: '" + version + "'");
+        }
+        File directory = Paths.get(PlatformUtil.getUserDirectory(), "SteganographyDetection", "models", version).toFile();
+        for (String fileName : fileNames) {
+            String expected = manifest.getProperty("sha256." + fileName);
+            if (expected == null) {
+                throw new IngestModuleException("Model file " + fileName + " is not bundled with the module. Build it with 'ant fetch-models',"
+                        + " or copy the file into models/ and run scripts/package_models.py, then rebuild");
+            }
+            File target = new File(directory, fileName);
+            if (verified.contains(target.getPath())) {
+                continue;
+            }
+            try {
+                if (!target.isFile() || !expected.equalsIgnoreCase(sha256(target))) {
+                    install(fileName, target, expected);
+                }
+            } catch (IOException e) {
+                throw new IngestModuleException("Could not extract model file " + fileName + " to " + directory, e);
+            }
+            verified.add(target.getPath());
+        }
+        return directory;
+    }
+
+    private static Properties loadManifest() throws IngestModuleException {
+        Properties manifest = new Properties();
+        try (InputStream in = ModelStore.class.getResourceAsStream(RESOURCE_DIR + MANIFEST)) {
+            if (in == null) {
+                throw new IngestModuleException("The module was built without models/" + MANIFEST);
+            }
+            manifest.load(in);
+        } catch (IOException e) {
+            throw new IngestModuleException("Could not read models/" + MANIFEST, e);
+        }
+        return manifest;
+    }
+
+    /**
+     * Copy a bundled file next to its target, check it and move it into place, so a worker
+     * never sees a partly written file.
+     */
+    private static void install(String fileName, File target, String expected) throws IOException, IngestModuleException {
+        File directory = target.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File partial = File.createTempFile(fileName, ".part", directory);
+        try {
+            try (InputStream in = ModelStore.class.getResourceAsStream(RESOURCE_DIR + fileName)) {
+                if (in == null) {
+                    throw new IngestModuleException("Model file " + fileName + " is in the manifest but missing from the module");
+                }
+                Files.copy(in, partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            String actual = sha256(partial);
+            if (!expected.equalsIgnoreCase(actual)) {
+                throw new IngestModuleException("Bundled model file " + fileName + " has SHA-256 " + actual + ", the manifest expects " + expected);
+            }
+            Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial.toPath());
+        }
+        logger.log(Level.INFO, "Extracted model file {0} to {1}", new Object[]{fileName, directory});
+    }
+
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+        byte[] buffer = new byte[65536];
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            while (in.read(buffer) != -1) {
+                // Digested as it is read
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+
+/**
+ * The hits of a findings log, most confident first. Opening it reads the log once, keeping
+ * only a rank key and the position of each hit (20 bytes a hit), then the hits are read back
+ * one at a time in rank order with positional reads. Scores of different stages are on
+ * different scales (see DetectionStage), so hits are ranked by the scale of their stage,
+ * the pre-filter's p-values first, then by score within it: the SVC decision value or the
+ * chi-square statistic, higher meaning more suspicious. Hits without a score come last in
+ * their stage, and ties keep the order they were found in.
+ */
+final class RankedFindings implements Closeable {
+
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+    private static final int INDEX_BITS = 30;  // The rest of a rank key holds the scale and the score
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    private final FileChannel channel;
+    private long[] order = new long[1024];  // Rank keys, see rankKey()
+    private long[] offsets = new long[1024];
+    private int[] lengths = new int[1024];
+    private int count = 0;
+    private int next = 0;
+
+    RankedFindings(File findingsFile) throws IOException {
+        index(findingsFile);
+        Arrays.sort(order, 0, count);
+        channel = FileChannel.open(findingsFile.toPath(), StandardOpenOption.READ);
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * The next most confident hit, or null once every hit has been read.
+     */
+    SuspectedFile next() throws IOException {
+        while (next < count) {
+            int index = (int) (INDEX_MASK - (order[count - 1 - next++] & INDEX_MASK));
+            ByteBuffer line = ByteBuffer.allocate(lengths[index]);
+            while (line.hasRemaining()) {
+                if (channel.read(line, offsets[index] + line.position()) < 0) {
+                    throw new IOException("The findings log was truncated while the report was written");
+                }
+            }
+            try {
+                return FindingsLog.parse(new String(line.array(), StandardCharsets.UTF_8));
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Skipping a malformed line of the findings log", e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void index(File findingsFile) throws IOException {
+        byte[] buffer = new byte[65536];
+        ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+        long position = 0;
+        long lineStart = 0;
+        try (InputStream in = Files.newInputStream(findingsFile.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                int from = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        line.write(buffer, from, i - from);
+                        add(lineStart, line.toByteArray());
+                        line.reset();
+                        from = i + 1;
+                        lineStart = position + from;
+                    }
+                }
+                line.write(buffer, from, read - from);
+                position += read;
+            }
+        }
+        if (line.size() > 0) {
+            add(lineStart, line.toByteArray());  // Only complete if the log ended without a newline
+        }
+    }
+
+    private void add(long offset, byte[] line) throws IOException {
+        int length = line.length;
+        while (length > 0 && (line[length - 1] == '\r' || line[length - 1] == ' ')) {
+            length--;  // Written with the platform's line separator
+        }
+        if (length == 0) {
+            return;
+        }
+        SuspectedFile finding;
+        try {
+            finding = FindingsLog.parse(new String(line, 0, length, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Skipping a malformed line of the findings log", e);
+            return;
+        }
+        if (count == INDEX_MASK) {
+            throw new IOException("The findings log has more than " + INDEX_MASK + " hits");
+        }
+        if (count == order.length) {
+            order = Arrays.copyOf(order, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        order[count] = rankKey(DetectionStage.getScale(finding.getDetectionStage()), finding.getScore(), count);
+        offsets[count] = offset;
+        lengths[count] = length;
+        count++;
+    }
+
+    /**
+     * From the top: the scale counted down in 2 bits, the score as a float rearranged so its
+     * bits sort like the floats in 32, and the hit's index counted down in 30. Sorting ascending
+     * and reading from the end gives the first scale first, its highest score first and the
+     * earliest of equal scores first. Built unsigned, then shifted so signed order matches.
+     */
+    private static long rankKey(int scale, double score, int index) {
+        float value = Double.isNaN(score) ? Float.NEGATIVE_INFINITY : (float) score;
+        int bits = Float.floatToIntBits(value);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        long sortableScore = (bits ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+        long key = ((long) (DetectionStage.UNKNOWN_SCALE - scale) << (32 + INDEX_BITS)) | (sortableScore << INDEX_BITS) | (INDEX_MASK - index);
+        return key ^ Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+/**
+ * Why an image got no verdict. Errors with a wire code are the ones the Python workers send
+ * in a result's status byte (see stegworker.py); the rest are found on the Java side.
+ * Retryable errors may clear up on another attempt and are sent to a worker again.
+ */
+enum ScoringError {
+
+    DECODE_FAILED(1, "Image could not be decoded", false),
+    FEATURES_FAILED(2, "Feature extraction failed", false),
+    MODEL_FAILED(3, "Model could not score the features", true),
+    WORKER_FAILED(-1, "Scoring worker crashed or sent a bad response", true),
+    TIMEOUT(-1, "Scoring worker timed out", true),
+    READ_FAILED(-1, "Content could not be read", false),
+    NO_CONTENT(-1, "Empty or too large to score", false),
+    INTERNAL(-1, "Unexpected error, see the ingest log", false);
+
+    private final int wireCode;
+    private final String displayName;
+    private final boolean retryable;
+
+    ScoringError(int wireCode, String displayName, boolean retryable) {
+        this.wireCode = wireCode;
+        this.displayName = displayName;
+        this.retryable = retryable;
+    }
+
+    String getDisplayName() {
+        return displayName;
+    }
+
+    boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * The error for a non-zero status byte, WORKER_FAILED for codes this version doesn't know.
+     */
+    static ScoringError fromWireCode(int code) {
+        for (ScoringError error : values()) {
+            if (error.wireCode == code) {
+                return error;
+            }
+        }
+        return WORKER_FAILED;
+    }
+}
@@ -0,0 +1,654 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import org.sleuthkit.autopsy.ingest.IngestModule.IngestModuleException;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.ReadContentInputStream;
+
+/**
+ * Scores the images of an ingest job off the ingest threads. process() only queues files;
+ * scoring threads take them in batches, read and screen them in Java and send whatever is
+ * left to the Python workers as one request per batch. The queue is bounded, so ingest
+ * threads wait when scoring falls behind instead of memory growing. The data source module
+ * scores batches on its own threads with scoreNow() instead, and the queue's threads are
+ * then never started. Content read for scoring counts against the job's memory budget; a
+ * thread that would exceed it sends what it holds to Python and waits for other threads to
+ * give memory back. Every verdict is also written to the case's VerdictLedger, and restore()
+ * lets the modules skip files an earlier job on the case already scored the same way.
+ */
+class ScoringPipeline {
+
+    /**
+     * Told about every queued file once it has been scored, on a scoring thread.
+     */
+    interface VerdictListener {
+
+        /**
+         * md5 is the content's hash; elapsedNanos runs from queueing to the verdict.
+         */
+        void verdictReady(AbstractFile file, String md5, Verdict verdict, long elapsedNanos);
+
+        /**
+         * The file could not be scored, after attempts tries if the error was retryable.
+         */
+        void scoringFailed(AbstractFile file, ScoringError error, int attempts);
+
+        /**
+         * A file was not rescored because an earlier job on the case scored it the same way.
+         * Called on the thread that called restore().
+         */
+        void verdictRestored(AbstractFile file, String md5, Verdict verdict);
+    }
+
+    static final int DEFAULT_BATCH_SIZE = 32;
+    private static final long MAX_BATCH_BYTES = 64L * 1024 * 1024;  // Sent early rather than holding more content
+    private static final long POLL_MS = 100;
+    private static final int MAX_ATTEMPTS = 3;  // Per image, for retryable worker errors
+    private static final long RETRY_BACKOFF_MS = 500;  // Doubled after every attempt
+
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+    private static final Map<Long, ScoringPipeline> pipelines = new HashMap<>();  // Pipelines by ingest job id
+    private static SvcModel bundledModel;
+    private static boolean bundledModelLoaded = false;
+
+    private final long jobId;
+    private final DetectionMethod detectionMethod;
+    private final SteganographyDetectionJobSettings settings;  // Each scoring thread builds its own LsbScreen from them
+    private final SvcModel svcModel;  // In-JVM SVM engine, null if the exported model is not bundled
+    private final ScoringWorkerPool workerPool;  // Python workers, only used for what Java can't score
+    private final VerdictCache verdictCache;  // Null if the job runs without the cache
+    private final VerdictLedger ledger;  // Null if the ledger could not be opened
+    private final boolean rescanAll;  // Rescore every file, still updating the ledger
+    private final String modelVersion;  // Of the engine that scores what the pre-filter leaves
+    private final String scoringVersion;  // The method, its thresholds and the model version behind a verdict
+    private final DetectionJobResults results;
+    private final DetectionMetrics metrics;
+    private final VerdictListener listener;
+    private final BlockingQueue<PendingImage> queue;
+    private final int threads;
+    private final int batchSize;
+    private final long maxBatchBytes;
+    private final ContentBufferPool buffers;  // Bounded by the job's memory budget
+    private volatile ExecutorService scorers;  // Started by the first submit()
+    private final ThreadLocal<BatchScorer> directScorers = new ThreadLocal<BatchScorer>() {
+        @Override
+        protected BatchScorer initialValue() {
+            return new BatchScorer();
+        }
+    };
+    private volatile boolean closing = false;
+    private int references = 0;
+
+    /**
+     * Get the pipeline for an ingest job, starting it for the first module instance of the job.
+     * The first instance's settings, listener and thread count are used for the whole job; the
+     * thread count sizes both the scoring threads and the Python worker pool.
+     * Every call must be matched by a call to release().
+     */
+    static synchronized ScoringPipeline acquire(long jobId, SteganographyDetectionJobSettings settings,
+            DetectionJobResults results, VerdictListener listener, int threads) throws IngestModuleException {
+        ScoringPipeline pipeline = pipelines.get(jobId);
+        if (pipeline == null) {
+            pipeline = new ScoringPipeline(jobId, settings, results, listener, Math.max(1, threads));
+            pipelines.put(jobId, pipeline);
+        }
+        pipeline.references++;
+        return pipeline;
+    }
+
+    /**
+     * Release the pipeline for an ingest job. The last module instance of the job waits here
+     * until every queued file has been scored and reported to the listener.
+     */
+    static void release(long jobId) {
+        ScoringPipeline pipeline;
+        synchronized (ScoringPipeline.class) {
+            pipeline = pipelines.get(jobId);
+            if (pipeline == null) {
+                return;
+            }
+            pipeline.references--;
+            if (pipeline.references > 0) {
+                return;
+            }
+            pipelines.remove(jobId);
+        }
+        pipeline.drain();  // Outside the lock so other jobs can start and stop meanwhile
+    }
+
+    private ScoringPipeline(long jobId, SteganographyDetectionJobSettings settings,
+            DetectionJobResults results, VerdictListener listener, int threads) throws IngestModuleException {
+        this.jobId = jobId;
+        this.detectionMethod = settings.getDetectionMethod();
+        this.settings = settings;
+        this.results = results;
+        this.metrics = results.getMetrics();
+        this.listener = listener;
+        this.svcModel = detectionMethod.usesJavaEngine() ? getBundledModel() : null;
+        this.verdictCache = settings.isCacheEnabled() ? SteganographyDetectionIngestModuleFactory.getVerdictCache() : null;
+        this.ledger = SteganographyDetectionIngestModuleFactory.getVerdictLedger();
+        this.rescanAll = settings.isRescanAll();
+        this.threads = threads;
+        this.batchSize = settings.getBatchSize();
+        long budgetBytes = settings.getEffectiveMemoryBudgetBytes();
+        this.buffers = new ContentBufferPool(budgetBytes);
+        this.maxBatchBytes = Math.min(MAX_BATCH_BYTES, budgetBytes / threads);  // Every thread can fill a batch
+        this.queue = new ArrayBlockingQueue<>(2 * batchSize * threads);
+        this.metrics.watchQueue(queue);
+        this.workerPool = ScoringWorkerPool.acquire(jobId, detectionMethod, threads, settings.getTimeoutSeconds() * 1000L, metrics);
+        this.modelVersion = svcModel != null ? svcModel.getVersion() : workerPool.getModelVersion();
+        // Pre-filter verdicts depend on the thresholds, so a change to them rescores the case
+        this.scoringVersion = detectionMethod.name()
+                + (detectionMethod == DetectionMethod.TIERED ? "/" + LsbScreen.VERSION + "/" + settings.getCleanBelow() + "/" + settings.getSuspectedAbove() : "")
+                + "/" + modelVersion;
+        logger.log(Level.INFO, "Scoring pipeline for job {0}: {1} threads, batches of {2}, {3} MB memory budget, cache {4}, {5}",
+                new Object[]{jobId, threads, batchSize, budgetBytes >> 20, verdictCache != null ? "on" : "off",
+                    rescanAll ? "rescoring every file" : "skipping files already scored"});
+    }
+
+    private synchronized void startScorers() {
+        if (scorers != null) {
+            return;
+        }
+        scorers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SteganographyDetection-scorer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (int i = 0; i < threads; i++) {
+            scorers.submit(new BatchScorer());
+        }
+        logger.log(Level.INFO, "Started " + threads + " scoring threads for job " + jobId);
+    }
+
+    private static synchronized SvcModel getBundledModel() {
+        if (!bundledModelLoaded) {
+            bundledModelLoaded = true;
+            try {
+                bundledModel = SvcModel.loadBundled();
+                if (bundledModel == null) {
+                    logger.log(Level.INFO, "No exported SVC model bundled, scoring with the Python workers only");
+                } else {
+                    logger.log(Level.INFO, "Loaded in-JVM SVC model " + bundledModel.getVersion());
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error loading the exported SVC model, scoring with the Python workers only", e);
+            }
+        }
+        return bundledModel;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Report a file to the listener without scoring it if an earlier job on the case scored it
+     * the same way and its content has not changed since. Returns false if it needs scoring.
+     * Only reads the ledger, so an ingest thread never waits on a worker here.
+     */
+    boolean restore(AbstractFile file) {
+        if (ledger == null || rescanAll) {
+            return false;
+        }
+        VerdictLedger.Entry entry;
+        try {
+            entry = ledger.get(file.getId());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error reading the verdict ledger for " + file.getName(), e);
+            return false;
+        }
+        if (entry == null || !entry.isCurrent(scoringVersion, file.getSize(), file.getMd5Hash())) {
+            return false;
+        }
+        Verdict verdict = new Verdict(entry.isSuspected(), entry.getScore(), scoringVersion,
+                entry.isPreFiltered() ? DetectionStage.LEDGER_PRE_FILTER : DetectionStage.LEDGER);
+        try {
+            listener.verdictRestored(file, entry.getMd5(), verdict);
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Error reporting the earlier verdict for " + file.getName(), e);
+        }
+        return true;
+    }
+
+    /**
+     * Queue a file for scoring, waiting while the queue is full.
+     * The format is the one sniffed from its header, whatever the file is named.
+     */
+    void submit(AbstractFile file, ImageHeader.Format format) throws InterruptedException {
+        if (scorers == null) {
+            startScorers();
+        }
+        queue.put(new PendingImage(file, format));
+    }
+
+    /**
+     * Score a batch of files on the calling thread, reporting each to the listener before returning.
+     * formats.get(i) is the format sniffed from files.get(i).
+     */
+    void scoreNow(List<AbstractFile> files, List<ImageHeader.Format> formats) throws InterruptedException {
+        BatchScorer scorer = directScorers.get();
+        scorer.batch.clear();
+        for (int i = 0; i < files.size(); i++) {
+            scorer.batch.add(new PendingImage(files.get(i), formats.get(i)));
+        }
+        scorer.scoreBatch();
+    }
+
+    private void drain() {
+        closing = true;
+        ExecutorService started = scorers;
+        if (started != null) {
+            stopScorers(started);
+        }
+        ScoringWorkerPool.release(jobId, detectionMethod);
+        logger.log(Level.INFO, "Scoring pipeline for job {0} stopped", jobId);
+    }
+
+    private void stopScorers(ExecutorService scorers) {
+        scorers.shutdown();
+        try {
+            while (!scorers.awaitTermination(POLL_MS * 10, TimeUnit.MILLISECONDS)) {
+                logger.log(Level.INFO, "Waiting for {0} queued images to be scored", queue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Interrupted while draining the scoring queue, " + queue.size() + " images were not scored", e);
+            scorers.shutdownNow();
+        }
+    }
+
+    /**
+     * One scoring thread. Takes up to batchSize files at a time until the pipeline is closing
+     * and the queue is empty.
+     */
+    private class BatchScorer implements Runnable {
+
+        private final SpamFeatureExtractor featureExtractor = new SpamFeatureExtractor();
+        private final LsbScreen lsbScreen = settings.createLsbScreen();  // Null for the methods without a pre-filter
+        private final List<PendingImage> batch = new ArrayList<>(batchSize);
+        private final List<PendingImage> toPython = new ArrayList<>(batchSize);
+        private long toPythonBytes = 0;
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    PendingImage first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        if (closing && queue.isEmpty()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    batch.clear();
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    scoreBatch();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void scoreBatch() throws InterruptedException {
+            for (PendingImage image : batch) {
+                AbstractFile file = image.file;
+                try {
+                    scoreInJava(image);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Error reading content of " + file.getName(), e);
+                    image.fail(ScoringError.READ_FAILED);
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Error scoring " + file.getName(), e);
+                    image.fail(ScoringError.INTERNAL);
+                }
+                if (image.done) {
+                    finish(image);
+                } else {
+                    toPython.add(image);
+                    toPythonBytes += image.length;
+                    if (toPythonBytes >= maxBatchBytes) {
+                        scoreInPython();
+                    }
+                }
+            }
+            scoreInPython();
+        }
+
+        /**
+         * Settle an image from the verdict cache, the pre-filter or the in-JVM engine if possible,
+         * otherwise leave its content read for the Python workers.
+         */
+        private void scoreInJava(PendingImage image) throws IOException, InterruptedException {
+            AbstractFile file = image.file;
+            long size = file.getSize();
+            if (size <= 0 || size > ImageSelectionPolicy.MAX_SUPPORTED_BYTES) {
+                logger.log(Level.FINE, "Skipping " + file.getName() + ", size " + size + " bytes is outside the scanned range");
+                image.fail(ScoringError.NO_CONTENT);
+                return;
+            }
+
+            String md5 = file.getMd5Hash();  // Already set if the hash lookup module ran first
+            if (md5 != null && !md5.isEmpty()) {
+                image.md5 = md5.toLowerCase();
+                if (verdictCache != null && settleFromCache(image)) {
+                    return;
+                }
+            }
+
+            acquireBuffer(image, (int) size);
+            long start = DetectionMetrics.now();
+            image.length = readContent(file, image.buffer, (int) size);
+            metrics.record(DetectionMetrics.Stage.READ, start);
+            metrics.recordBytesRead(image.length);
+            if (image.md5 == null) {
+                image.md5 = md5Hex(image.buffer, image.length);  // Also identifies the file in the findings
+                if (verdictCache != null && settleFromCache(image)) {
+                    return;
+                }
+            }
+
+            BufferedImage decoded = null;
+            if (svcModel != null || lsbScreen != null) {
+                try {
+                    start = DetectionMetrics.now();
+                    // null for formats ImageIO can't decode, e.g. DNG
+                    decoded = ImageIO.read(new ByteArrayInputStream(image.buffer, 0, image.length));
+                    metrics.record(DetectionMetrics.Stage.DECODE, start);
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.WARNING, "Could not decode " + file.getName() + " in Java, falling back to Python", e);
+                }
+            }
+
+            if (lsbScreen != null) {
+                if (decoded == null) {
+                    results.recordUnscreened();  // Goes straight to the classifier
+                } else {
+                    start = DetectionMetrics.now();
+                    double pValue = lsbScreen.pairOfValuesPValue(decoded);
+                    metrics.record(DetectionMetrics.Stage.PRE_FILTER, start);
+                    LsbScreen.Decision decision = lsbScreen.decide(pValue);
+                    results.recordScreened(decision);
+                    if (decision != LsbScreen.Decision.AMBIGUOUS) {
+                        // Not cached, pre-filter verdicts depend on the job's thresholds
+                        image.settle(new Verdict(decision == LsbScreen.Decision.SUSPECTED, pValue, LsbScreen.VERSION, DetectionStage.PRE_FILTER));
+                        return;
+                    }
+                }
+            }
+
+            if (svcModel != null && decoded != null) {
+                try {
+                    start = DetectionMetrics.now();
+                    double[] features = featureExtractor.extract(decoded);
+                    metrics.record(DetectionMetrics.Stage.FEATURES, start);
+                    start = DetectionMetrics.now();
+                    double decision = svcModel.decisionFunction(features);
+                    metrics.record(DetectionMetrics.Stage.CLASSIFY, start);
+                    logger.log(Level.FINE, "SVC decision " + decision + " for " + file.getName());
+                    image.settle(new Verdict(svcModel.isStego(decision), decision, svcModel.getVersion(), DetectionStage.CLASSIFIER));
+                    if (verdictCache != null) {
+                        verdictCache.put(image.md5, image.verdict);
+                    }
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "In-JVM engine could not score " + file.getName() + ", falling back to Python", e);
+                }
+            }
+        }
+
+        /**
+         * Get a buffer for the image's content within the memory budget. The thread hands back
+         * what it holds before waiting for room, so threads can't all wait on each other.
+         */
+        private void acquireBuffer(PendingImage image, int size) throws InterruptedException {
+            image.buffer = buffers.tryAcquire(size);
+            if (image.buffer == null) {
+                scoreInPython();
+                image.buffer = buffers.acquire(size);
+            }
+        }
+
+        private void releaseBuffer(PendingImage image) {
+            buffers.release(image.buffer);
+            image.buffer = null;
+        }
+
+        private boolean settleFromCache(PendingImage image) {
+            Verdict cached = verdictCache.get(image.md5, modelVersion);
+            if (cached != null) {
+                results.recordCacheHit();
+                image.settle(cached);
+            } else {
+                results.recordCacheMiss();
+            }
+            return cached != null;
+        }
+
+        /**
+         * Send what the thread holds to the Python workers as one request. A worker crash or
+         * timeout fails the whole request without telling which image caused it, so the images
+         * it leaves unscored are sent again one at a time: only an image that fails on its own
+         * uses up its attempts, with a pause before each retry that doubles every time.
+         */
+        private void scoreInPython() throws InterruptedException {
+            if (toPython.isEmpty()) {
+                return;
+            }
+            try {
+                for (PendingImage image : sendToPython(toPython)) {
+                    scoreAlone(image);
+                }
+            } finally {
+                for (PendingImage image : toPython) {
+                    releaseBuffer(image);  // No-op for images already finished
+                }
+                toPython.clear();
+                toPythonBytes = 0;
+            }
+        }
+
+        private void scoreAlone(PendingImage image) throws InterruptedException {
+            List<PendingImage> single = Collections.singletonList(image);
+            long backoffMs = RETRY_BACKOFF_MS;
+            while (!sendToPython(single).isEmpty()) {
+                logger.log(Level.INFO, "Retrying {0} in {1} ms", new Object[]{image.getWorkerName(), backoffMs});
+                Thread.sleep(backoffMs);
+                backoffMs *= 2;
+            }
+        }
+
+        // Finishes every image that was scored or can't be retried, returns the others
+        private List<PendingImage> sendToPython(List<PendingImage> images) throws InterruptedException {
+            int count = images.size();
+            String[] names = new String[count];
+            byte[][] data = new byte[count][];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                PendingImage image = images.get(i);
+                names[i] = image.getWorkerName();
+                data[i] = image.buffer;
+                lengths[i] = image.length;
+            }
+
+            long start = DetectionMetrics.now();
+            ScoringWorkerPool.Result[] scored = workerPool.score(names, data, lengths);
+            metrics.record(DetectionMetrics.Stage.WORKER, start);
+            List<PendingImage> retry = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                PendingImage image = images.get(i);
+                ScoringWorkerPool.Result result = scored[i];
+                if (result.getFeatureNanos() > 0) {
+                    metrics.recordDuration(DetectionMetrics.Stage.FEATURES, result.getFeatureNanos());
+                }
+                Verdict verdict = result.getVerdict();
+                ScoringError error = result.getError();
+                boolean wholeRequest = count > 1 && (error == ScoringError.WORKER_FAILED || error == ScoringError.TIMEOUT);
+                if (!wholeRequest) {
+                    image.attempts++;  // Not charged when any image of the request may be at fault
+                }
+                if (verdict != null) {
+                    if (image.resent) {
+                        results.recordRecovered();
+                    }
+                    if (verdictCache != null && verdict.getModelVersion() != null) {
+                        verdictCache.put(image.md5, verdict);
+                    }
+                    image.settle(verdict);
+                } else if (error.isRetryable() && image.attempts < MAX_ATTEMPTS) {
+                    if (!image.resent) {
+                        image.resent = true;
+                        results.recordRetried();
+                    }
+                    retry.add(image);
+                    continue;
+                } else {
+                    logger.log(Level.WARNING, "Steganography detection failed for {0}: {1}", new Object[]{names[i], error.getDisplayName()});
+                    image.fail(error);
+                }
+                finish(image);
+            }
+            return retry;
+        }
+
+        private void finish(PendingImage image) {
+            releaseBuffer(image);
+            metrics.recordFileDone();
+            if (ledger != null && image.verdict != null && image.md5 != null) {
+                try {
+                    ledger.put(image.file.getId(), image.md5, image.file.getSize(), scoringVersion, image.verdict);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Error writing the verdict ledger for " + image.file.getName(), e);
+                }
+            }
+            try {
+                if (image.verdict != null) {
+                    listener.verdictReady(image.file, image.md5, image.verdict, System.nanoTime() - image.queuedNanos);
+                } else {
+                    metrics.recordError();
+                    listener.scoringFailed(image.file, image.error, image.attempts);
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Error reporting the verdict for " + image.file.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * An image on its way through a batch.
+     */
+    private static class PendingImage {
+
+        final AbstractFile file;
+        final ImageHeader.Format format;
+        final long queuedNanos = System.nanoTime();
+        String md5;
+        byte[] buffer;  // From the job's pool, held until released
+        int length;
+        Verdict verdict;
+        ScoringError error;  // Why there is no verdict
+        int attempts;  // Failed or scored alone by a worker this many times
+        boolean resent;  // Sent to a worker again after a failure
+        boolean done = false;
+
+        PendingImage(AbstractFile file, ImageHeader.Format format) {
+            this.file = file;
+            this.format = format;
+        }
+
+        /**
+         * The workers decide how to decode an image by its extension, so a renamed image
+         * is sent with the extension of its real format.
+         */
+        String getWorkerName() {
+            String name = file.getName();
+            return name.toLowerCase().endsWith(format.getExtension()) ? name : name + format.getExtension();
+        }
+
+        void settle(Verdict verdict) {
+            this.verdict = verdict;
+            this.done = true;
+        }
+
+        void fail(ScoringError error) {
+            this.error = error;
+            this.done = true;
+        }
+    }
+
+    private static String md5Hex(byte[] buffer, int length) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            md.update(buffer, 0, length);
+            byte[] digest = md.digest();
+            StringBuilder hex = new StringBuilder(32);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is always available", e);
+        }
+    }
+
+    /**
+     * Read the file content through the Sleuth Kit, which works for files inside disk images
+     * that have no local path.
+     */
+    private static int readContent(AbstractFile file, byte[] buffer, int size) throws IOException {
+        int total = 0;
+        try (InputStream in = new ReadContentInputStream(file)) {
+            int read;
+            while (total < size && (read = in.read(buffer, total, size - total)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+}
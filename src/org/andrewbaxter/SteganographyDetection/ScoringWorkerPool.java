@@ -0,0 +1,435 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.DataInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.ingest.IngestModule.IngestModuleException;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+
+/**
+ * Long-lived Python scoring processes shared by every module instance of an ingest job.
+ * Each worker loads the model once and then answers framed requests
+ * (4-byte big-endian length + payload) on its stdin/stdout. A request carries a batch of
+ * file names and image bytes, so evidence never has to be copied to disk and the model
+ * scores a stacked feature matrix per round trip. The response is a fixed-layout binary
+ * result per image, so a failure is reported as an error code rather than looking like a
+ * clean image.
+ */
+class ScoringWorkerPool {
+
+    private static final String SCRIPTS_RESOURCE_DIR = "/org/andrewbaxter/SteganographyDetection/scripts/";
+    private static final String[] SCRIPT_NAMES = {"stegworker.py", "spam_features.py", "export_model.py", "autopsySVC.py", "LSB.py", "tiled_spam.py"};
+    private static final String READY = "READY";
+    private static final String FAILED = "FAILED";  // Sent instead of READY by a worker that can't load its model
+    private static final long STARTUP_TIMEOUT_MS = 120000;
+
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+    private static final Map<String, ScoringWorkerPool> pools = new HashMap<>();  // Pools by ingest job id and method
+
+    private final File scriptsDirectory;
+    private final File modelDirectory;  // Extracted model files, passed to the workers as STEG_MODEL_DIR
+    private final String workerScript;
+    private final boolean tiled;  // Workers started with --tiled
+    private final long requestTimeoutMs;  // Per image in the batch
+    private final DetectionMetrics metrics;
+    private final File workerLog;
+    private final BlockingQueue<ScoringWorker> idleWorkers;
+    private final ExecutorService readers;
+    private int references = 0;
+    private volatile String modelVersion;  // Reported by the workers when they start
+
+    /**
+     * What a worker made of one image: a verdict, or the error that stopped it.
+     */
+    static final class Result {
+
+        private final Verdict verdict;
+        private final ScoringError error;
+        private final long featureNanos;
+
+        private Result(Verdict verdict, ScoringError error, long featureNanos) {
+            this.verdict = verdict;
+            this.error = error;
+            this.featureNanos = featureNanos;
+        }
+
+        /**
+         * Null if the image was not scored, see getError().
+         */
+        Verdict getVerdict() {
+            return verdict;
+        }
+
+        ScoringError getError() {
+            return error;
+        }
+
+        /**
+         * Time the worker spent extracting the image's features, 0 if it got no further than decoding.
+         */
+        long getFeatureNanos() {
+            return featureNanos;
+        }
+    }
+
+    /**
+     * Get the pool for an ingest job, starting it for the first module instance of the job
+     * with up to size workers, each given requestTimeoutMs per image of a batch.
+     * Timeouts are counted in the job's metrics. Every call must be matched by a call to release().
+     */
+    static synchronized ScoringWorkerPool acquire(long jobId, DetectionMethod method, int size, long requestTimeoutMs,
+            DetectionMetrics metrics) throws IngestModuleException {
+        String key = jobId + "/" + method.name();
+        ScoringWorkerPool pool = pools.get(key);
+        if (pool == null) {
+            pool = new ScoringWorkerPool(method, size, requestTimeoutMs, metrics);
+            pools.put(key, pool);
+        }
+        pool.references++;
+        return pool;
+    }
+
+    /**
+     * Release the pool for an ingest job, stopping the workers once the last module instance is done.
+     */
+    static synchronized void release(long jobId, DetectionMethod method) {
+        String key = jobId + "/" + method.name();
+        ScoringWorkerPool pool = pools.get(key);
+        if (pool == null) {
+            return;
+        }
+        pool.references--;
+        if (pool.references <= 0) {
+            pools.remove(key);
+            pool.close();
+        }
+    }
+
+    private ScoringWorkerPool(DetectionMethod method, int requestedSize, long requestTimeoutMs, DetectionMetrics metrics) throws IngestModuleException {
+        int size = Math.max(1, requestedSize);
+        this.workerScript = method.getWorkerScript();
+        this.tiled = method.isTiled();
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.metrics = metrics;
+        this.scriptsDirectory = getScriptsDirectory();
+        this.modelDirectory = ModelStore.extract(method.getModelFiles());
+        this.workerLog = new File(Case.getCurrentCase().getLogDirectoryPath(), "SteganographyDetectionWorkers.log");
+        this.idleWorkers = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            idleWorkers.add(new ScoringWorker());  // All but the first are started on first use
+        }
+        this.readers = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SteganographyDetection-worker-reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        startFirstWorker();
+        logger.log(Level.INFO, "Started " + workerScript + " scoring pool with " + size + " workers, model version " + modelVersion);
+    }
+
+    /**
+     * Start one worker up front, so a worker that can't load its model fails the job's startUp
+     * with the reason instead of failing every image.
+     */
+    private void startFirstWorker() throws IngestModuleException {
+        ScoringWorker first = idleWorkers.peek();
+        try {
+            first.ensureStarted();
+        } catch (IOException e) {
+            close();
+            throw new IngestModuleException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            close();
+            throw new IngestModuleException("Scoring worker " + workerScript + " exited before it was ready, see " + workerLog, e);
+        } catch (TimeoutException e) {
+            close();
+            throw new IngestModuleException("Scoring worker " + workerScript + " was not ready within " + STARTUP_TIMEOUT_MS / 1000 + " seconds", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IngestModuleException("Interrupted while starting scoring worker " + workerScript, e);
+        }
+    }
+
+    /**
+     * Score a batch of images, the first lengths[i] bytes of data[i] being image i.
+     * Returns a result per image. Names are only used for their extension and logging.
+     * A worker that crashes or times out is restarted and every image of the batch gets
+     * WORKER_FAILED or TIMEOUT; retrying them is up to the caller. A worker left mid-request
+     * for any other reason, e.g. an interrupt, is restarted too, as its pipe may still hold
+     * part of a reply.
+     */
+    Result[] score(String[] names, byte[][] data, int[] lengths) throws InterruptedException {
+        ScoringWorker worker = idleWorkers.take();
+        boolean completed = false;
+        try {
+            Result[] results = parseResults(worker.request(names, data, lengths), names.length);
+            completed = true;
+            return results;
+        } catch (IOException | ExecutionException e) {
+            logger.log(Level.WARNING, "Scoring worker failed on a batch of " + names.length + " images, restarting it", e);
+            return failAll(names.length, ScoringError.WORKER_FAILED);
+        } catch (TimeoutException e) {
+            logger.log(Level.WARNING, "Scoring worker timed out on a batch of {0} images, restarting it", names.length);
+            metrics.recordTimeout();
+            return failAll(names.length, ScoringError.TIMEOUT);
+        } finally {
+            if (!completed) {
+                worker.stop();  // Started again by its next request
+            }
+            idleWorkers.add(worker);
+        }
+    }
+
+    private static Result[] failAll(int count, ScoringError error) {
+        Result[] results = new Result[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = new Result(null, error, 0);
+        }
+        return results;
+    }
+
+    // Per image, big-endian: status (1 byte, 0 or a ScoringError wire code), suspected (1 byte),
+    // score (8-byte double, NaN if none), feature time in microseconds (4 bytes unsigned) and
+    // tile count (2 bytes unsigned), then x, y, width, height (4 bytes each) and score per tile
+    private Result[] parseResults(byte[] payload, int count) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        DetectionStage stage = tiled ? DetectionStage.TILE_CLASSIFIER : DetectionStage.CLASSIFIER;
+        Result[] results = new Result[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                int status = in.get() & 0xff;
+                boolean suspected = in.get() != 0;
+                double score = in.getDouble();
+                long featureNanos = (in.getInt() & 0xffffffffL) * 1000;
+                int tileCount = in.getShort() & 0xffff;
+                List<TileScore> tiles = tileCount == 0 ? Collections.<TileScore>emptyList() : new ArrayList<TileScore>(tileCount);
+                for (int tile = 0; tile < tileCount; tile++) {
+                    tiles.add(new TileScore(in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getDouble()));
+                }
+                results[i] = status == 0
+                        ? new Result(new Verdict(suspected, score, modelVersion, stage, tiles), null, featureNanos)
+                        : new Result(null, ScoringError.fromWireCode(status), featureNanos);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Scoring worker sent a truncated response for " + count + " images", e);
+        }
+        if (in.hasRemaining()) {
+            throw new IOException("Scoring worker sent " + in.remaining() + " bytes more than " + count + " results");
+        }
+        return results;
+    }
+
+    /**
+     * The version of the model the workers load, reported by the first worker when the pool started.
+     */
+    String getModelVersion() {
+        return modelVersion;
+    }
+
+    private synchronized void close() {
+        for (ScoringWorker worker : idleWorkers) {
+            worker.stop();
+        }
+        readers.shutdownNow();
+    }
+
+    private File getScriptsDirectory() throws IngestModuleException {
+        try {
+            // Get the URL of the worker script as a resource inside the JAR or file system
+            URL scriptUrl = getClass().getResource(SCRIPTS_RESOURCE_DIR + workerScript);
+            if (scriptUrl == null) {
+                throw new IngestModuleException("Python script file does not exist within the JAR or project");
+            }
+
+            // Convert the URL to a URI to handle spaces and special characters in path
+            URI scriptUri = scriptUrl.toURI();
+
+            // Scripts inside a JAR are extracted once per job so the worker can import its helpers
+            if ("jar".equalsIgnoreCase(scriptUri.getScheme())) {
+                return extractScriptsToTempDirectory();
+            } else {
+                return new File(scriptUri).getParentFile();
+            }
+        } catch (URISyntaxException | IOException ex) {
+            throw new IngestModuleException("Error locating the steganography detection scripts", ex);
+        }
+    }
+
+    private File extractScriptsToTempDirectory() throws IOException {
+        File tempDir = Files.createTempDirectory("SteganographyDetection").toFile();
+        tempDir.deleteOnExit();
+        for (String scriptName : SCRIPT_NAMES) {
+            File scriptFile = new File(tempDir, scriptName);
+            scriptFile.deleteOnExit(); // Ensure the file is deleted when the JVM exits
+            try (InputStream in = getClass().getResourceAsStream(SCRIPTS_RESOURCE_DIR + scriptName);
+                 OutputStream out = new FileOutputStream(scriptFile)) {
+                if (in == null) {
+                    throw new IOException("Missing script resource " + scriptName);
+                }
+                byte[] buffer = new byte[4096];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, bytesRead);
+                }
+            }
+        }
+        return tempDir;
+    }
+
+    // Request payload: 2-byte image count, then per image a 2-byte name length, the UTF-8 file name,
+    // a 4-byte image length and the image bytes
+    private static void writeBatchFrame(DataOutputStream out, String[] names, byte[][] data, int[] lengths) throws IOException {
+        byte[][] nameBytes = new byte[names.length][];
+        int payloadLength = 2;
+        for (int i = 0; i < names.length; i++) {
+            nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            payloadLength += 2 + nameBytes[i].length + 4 + lengths[i];
+        }
+        out.writeInt(payloadLength);
+        out.writeShort(names.length);
+        for (int i = 0; i < names.length; i++) {
+            out.writeShort(nameBytes[i].length);
+            out.write(nameBytes[i]);
+            out.writeInt(lengths[i]);
+            out.write(data[i], 0, lengths[i]);
+        }
+        out.flush();
+    }
+
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();  // EOFException if the worker died
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * One Python process. Only used by the thread that took it from the idle queue.
+     */
+    private class ScoringWorker {
+
+        private Process process;
+        private DataOutputStream toWorker;
+        private DataInputStream fromWorker;
+
+        byte[] request(String[] names, byte[][] data, int[] lengths) throws IOException, ExecutionException, TimeoutException, InterruptedException {
+            ensureStarted();
+            writeBatchFrame(toWorker, names, data, lengths);
+            return awaitFrame(requestTimeoutMs * names.length);
+        }
+
+        void ensureStarted() throws IOException, ExecutionException, TimeoutException, InterruptedException {
+            if (process == null || !process.isAlive()) {
+                start();
+            }
+        }
+
+        private void start() throws IOException, ExecutionException, TimeoutException, InterruptedException {
+            stop();
+            ProcessBuilder processBuilder = tiled
+                    ? new ProcessBuilder("python", new File(scriptsDirectory, workerScript).getAbsolutePath(), "--worker", "--tiled")
+                    : new ProcessBuilder("python", new File(scriptsDirectory, workerScript).getAbsolutePath(), "--worker");
+            processBuilder.directory(scriptsDirectory);
+            processBuilder.environment().put("STEG_MODEL_DIR", modelDirectory.getAbsolutePath());
+            processBuilder.redirectError(ProcessBuilder.Redirect.appendTo(workerLog));
+            process = processBuilder.start();
+            toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), 65536));
+            fromWorker = new DataInputStream(process.getInputStream());
+
+            // "READY <model version>", or "FAILED <reason>"
+            String greeting = new String(awaitFrame(STARTUP_TIMEOUT_MS), StandardCharsets.UTF_8);
+            if (greeting.startsWith(FAILED + " ")) {
+                stop();
+                throw new IOException("Scoring worker " + workerScript + " could not start: " + greeting.substring(FAILED.length() + 1));
+            }
+            if (!greeting.startsWith(READY + " ")) {
+                stop();
+                throw new IOException("Unexpected greeting from scoring worker: " + greeting);
+            }
+            modelVersion = greeting.substring(READY.length() + 1);
+        }
+
+        private byte[] awaitFrame(long timeoutMs) throws ExecutionException, TimeoutException, InterruptedException {
+            final DataInputStream in = fromWorker;
+            Future<byte[]> response = readers.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return readFrame(in);
+                }
+            });
+            try {
+                return response.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } finally {
+                response.cancel(true);
+            }
+        }
+
+        void stop() {
+            if (process != null) {
+                try {
+                    toWorker.close();  // Lets a healthy worker exit on its own
+                } catch (IOException ignored) {
+                }
+                process.destroyForcibly();  // Also unblocks a reader stuck on the pipe
+                process = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+/**
+ * Why a file was not scored. Failures count against coverage, the others are files the
+ * job's selection policy chose not to scan.
+ */
+enum SkipReason {
+
+    NOT_IMAGE("Not a supported image", false),
+    FORMAT_EXCLUDED("Format not selected for this job", false),
+    TOO_SMALL("Smaller than the minimum dimensions", false),
+    TOO_LARGE("Larger than the maximum size", false),
+    UNREADABLE("Header could not be read", true),
+    NOT_SCORED("Could not be read, decoded or scored", true);
+
+    private final String displayName;
+    private final boolean failure;
+
+    SkipReason(String displayName, boolean failure) {
+        this.displayName = displayName;
+        this.failure = failure;
+    }
+
+    String getDisplayName() {
+        return displayName;
+    }
+
+    boolean isFailure() {
+        return failure;
+    }
+}
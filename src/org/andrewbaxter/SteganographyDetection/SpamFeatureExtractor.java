@@ -0,0 +1,281 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+/**
+ * Java port of preprocess_and_extract_features in autopsySVC.py: grayscale conversion,
+ * a 512x512 Lanczos resize and second order SPAM features with T=3.
+ * The conversion and resize follow Pillow's integer arithmetic so the features match the script.
+ * Buffers are reused between images, so an instance must only be used by one thread.
+ */
+class SpamFeatureExtractor {
+
+    static final int T = 3;
+    static final int FEATURE_COUNT = (2 * T + 1) * (2 * T + 1) * (2 * T + 1);
+    static final int TARGET_SIZE = 512;
+
+    private static final int PRECISION_BITS = 32 - 8 - 2;  // Pillow's Resample.c fixed point precision
+    private static final double LANCZOS_SUPPORT = 3.0;
+
+    private int[] gray = new int[0];
+    private int[] rowSamples = new int[0];
+    private int[] horizontal = new int[0];
+    private final int[] resized = new int[TARGET_SIZE * TARGET_SIZE];
+    private final byte[] differences = new byte[TARGET_SIZE * TARGET_SIZE];
+    private final long[] histogram = new long[FEATURE_COUNT];
+    private final double[] features = new double[FEATURE_COUNT];
+
+    /**
+     * Extract the SPAM features of a decoded image. The returned array is reused by the next call.
+     */
+    double[] extract(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        toGray(image, width, height);
+        resize(width, height);
+        return spam(resized, TARGET_SIZE, TARGET_SIZE);
+    }
+
+    /**
+     * Same as Pillow's convert('L'): ITU-R 601-2 luma with 16 bit fixed point weights.
+     */
+    private void toGray(BufferedImage image, int width, int height) {
+        if (gray.length < width * height) {
+            gray = new int[width * height];
+        }
+        Raster raster = image.getRaster();
+        ColorModel colorModel = image.getColorModel();
+        int bands = raster.getNumBands();
+        if (rowSamples.length < width * bands) {
+            rowSamples = new int[width * bands];
+        }
+
+        if (colorModel instanceof IndexColorModel) {
+            IndexColorModel palette = (IndexColorModel) colorModel;
+            int size = palette.getMapSize();
+            int[] lookup = new int[size];
+            for (int i = 0; i < size; i++) {
+                lookup[i] = luma(palette.getRed(i), palette.getGreen(i), palette.getBlue(i));
+            }
+            for (int y = 0; y < height; y++) {
+                raster.getSamples(0, y, width, 1, 0, rowSamples);
+                for (int x = 0; x < width; x++) {
+                    gray[y * width + x] = lookup[Math.min(rowSamples[x], size - 1)];
+                }
+            }
+            return;
+        }
+
+        int bits = colorModel.getComponentSize(0);
+        if (colorModel.getNumColorComponents() < 3) {
+            // Pillow clips 16 bit grayscale into 8 bits instead of scaling it
+            for (int y = 0; y < height; y++) {
+                raster.getSamples(0, y, width, 1, 0, rowSamples);
+                for (int x = 0; x < width; x++) {
+                    gray[y * width + x] = Math.min(rowSamples[x], 255);
+                }
+            }
+            return;
+        }
+
+        // Pillow keeps the most significant byte of 16 bit colour samples
+        int shift = Math.max(0, bits - 8);
+        for (int y = 0; y < height; y++) {
+            raster.getPixels(0, y, width, 1, rowSamples);
+            for (int x = 0; x < width; x++) {
+                int offset = x * bands;
+                gray[y * width + x] = luma(rowSamples[offset] >> shift, rowSamples[offset + 1] >> shift, rowSamples[offset + 2] >> shift);
+            }
+        }
+    }
+
+    private static int luma(int r, int g, int b) {
+        return (r * 19595 + g * 38470 + b * 7471 + 0x8000) >> 16;
+    }
+
+    /**
+     * Pillow's two pass Lanczos resample of the gray buffer into resized, horizontal pass first.
+     */
+    private void resize(int width, int height) {
+        int[] source = gray;
+        int sourceWidth = width;
+
+        if (width != TARGET_SIZE) {
+            Coefficients coefficients = new Coefficients(width, TARGET_SIZE);
+            int[] target = height == TARGET_SIZE ? resized : growHorizontal(TARGET_SIZE * height);
+            for (int y = 0; y < height; y++) {
+                int rowOffset = y * width;
+                for (int x = 0; x < TARGET_SIZE; x++) {
+                    int min = coefficients.bounds[x * 2];
+                    int count = coefficients.bounds[x * 2 + 1];
+                    int k = x * coefficients.size;
+                    int sum = 1 << (PRECISION_BITS - 1);
+                    for (int i = 0; i < count; i++) {
+                        sum += source[rowOffset + min + i] * coefficients.weights[k + i];
+                    }
+                    target[y * TARGET_SIZE + x] = clip8(sum);
+                }
+            }
+            source = target;
+            sourceWidth = TARGET_SIZE;
+        }
+
+        if (height != TARGET_SIZE) {
+            Coefficients coefficients = new Coefficients(height, TARGET_SIZE);
+            for (int y = 0; y < TARGET_SIZE; y++) {
+                int min = coefficients.bounds[y * 2];
+                int count = coefficients.bounds[y * 2 + 1];
+                int k = y * coefficients.size;
+                for (int x = 0; x < TARGET_SIZE; x++) {
+                    int sum = 1 << (PRECISION_BITS - 1);
+                    for (int i = 0; i < count; i++) {
+                        sum += source[(min + i) * sourceWidth + x] * coefficients.weights[k + i];
+                    }
+                    resized[y * TARGET_SIZE + x] = clip8(sum);
+                }
+            }
+        } else if (width == TARGET_SIZE) {
+            System.arraycopy(source, 0, resized, 0, TARGET_SIZE * TARGET_SIZE);
+        }
+    }
+
+    private int[] growHorizontal(int size) {
+        if (horizontal.length < size) {
+            horizontal = new int[size];
+        }
+        return horizontal;
+    }
+
+    private static int clip8(int value) {
+        int shifted = value >> PRECISION_BITS;
+        return shifted < 0 ? 0 : (shifted > 255 ? 255 : shifted);
+    }
+
+    /**
+     * spam_extract_2 from autopsySVC.py: the mean of the normalised co-occurrence histograms
+     * of the four clipped difference arrays. Like the script, each triple is taken from
+     * three consecutive rows of a difference array whatever its direction.
+     */
+    double[] spam(int[] pixels, int width, int height) {
+        Arrays.fill(features, 0);
+        for (int direction = 0; direction < 4; direction++) {
+            int dWidth = direction == 1 ? width : width - 1;
+            int dHeight = direction == 0 ? height : height - 1;
+            for (int y = 0; y < dHeight; y++) {
+                for (int x = 0; x < dWidth; x++) {
+                    int difference;
+                    switch (direction) {
+                        case 0:
+                            difference = pixels[y * width + x] - pixels[y * width + x + 1];
+                            break;
+                        case 1:
+                            difference = pixels[y * width + x] - pixels[(y + 1) * width + x];
+                            break;
+                        case 2:
+                            difference = pixels[y * width + x] - pixels[(y + 1) * width + x + 1];
+                            break;
+                        default:
+                            difference = pixels[(y + 1) * width + x] - pixels[y * width + x + 1];
+                            break;
+                    }
+                    differences[y * dWidth + x] = (byte) (difference < -T ? -T : (difference > T ? T : difference));
+                }
+            }
+
+            Arrays.fill(histogram, 0);
+            int triples = (dHeight - 2) * dWidth;
+            for (int i = 0; i < triples; i++) {
+                int bin = (differences[i] + T) * 49 + (differences[i + dWidth] + T) * 7 + (differences[i + 2 * dWidth] + T);
+                histogram[bin]++;
+            }
+            for (int bin = 0; bin < FEATURE_COUNT; bin++) {
+                features[bin] += (double) histogram[bin] / triples;
+            }
+        }
+        for (int bin = 0; bin < FEATURE_COUNT; bin++) {
+            features[bin] /= 4;
+        }
+        return features;
+    }
+
+    /**
+     * Pillow's precompute_coeffs and normalize_coeffs_8bpc for the Lanczos filter.
+     */
+    private static class Coefficients {
+
+        final int size;
+        final int[] bounds;
+        final int[] weights;
+
+        Coefficients(int inSize, int outSize) {
+            double scale = (double) inSize / outSize;
+            double filterScale = Math.max(scale, 1.0);
+            double support = LANCZOS_SUPPORT * filterScale;
+            size = (int) Math.ceil(support) * 2 + 1;
+            bounds = new int[outSize * 2];
+            weights = new int[outSize * size];
+
+            double[] k = new double[size];
+            for (int xx = 0; xx < outSize; xx++) {
+                double center = (xx + 0.5) * scale;
+                double total = 0.0;
+                double ss = 1.0 / filterScale;
+                int xmin = Math.max(0, (int) (center - support + 0.5));
+                int xmax = Math.min(inSize, (int) (center + support + 0.5)) - xmin;
+                for (int x = 0; x < xmax; x++) {
+                    double w = lanczos((x + xmin - center + 0.5) * ss);
+                    k[x] = w;
+                    total += w;
+                }
+                for (int x = 0; x < xmax; x++) {
+                    double w = total != 0.0 ? k[x] / total : k[x];
+                    weights[xx * size + x] = (int) (w < 0 ? -0.5 + w * (1 << PRECISION_BITS) : 0.5 + w * (1 << PRECISION_BITS));
+                }
+                bounds[xx * 2] = xmin;
+                bounds[xx * 2 + 1] = xmax;
+            }
+        }
+
+        private static double lanczos(double x) {
+            if (-LANCZOS_SUPPORT <= x && x < LANCZOS_SUPPORT) {
+                return sinc(x) * sinc(x / 3);
+            }
+            return 0.0;
+        }
+
+        private static double sinc(double x) {
+            if (x == 0.0) {
+                return 1.0;
+            }
+            x = x * Math.PI;
+            return Math.sin(x) / x;
+        }
+    }
+}
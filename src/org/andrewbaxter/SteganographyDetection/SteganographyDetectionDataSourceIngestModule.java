@@ -0,0 +1,257 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.ingest.DataSourceIngestModule;
+import org.sleuthkit.autopsy.ingest.DataSourceIngestModuleProgress;
+import org.sleuthkit.autopsy.ingest.IngestJobContext;
+import org.sleuthkit.autopsy.ingest.IngestModule.IngestModuleException;
+import org.sleuthkit.autopsy.ingest.IngestModule.ProcessResult;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * Scans a whole data source in one pass instead of waiting for Autopsy to hand over files
+ * one by one. The IDs of the candidate files are fetched with a single case database query,
+ * ordered by their first byte on disk, and split into contiguous runs that a fork-join pool
+ * scores in parallel, so reads stay mostly sequential while every core is busy. Each run loads
+ * its own files, so only the IDs of the whole data source are held at once.
+ */
+public class SteganographyDetectionDataSourceIngestModule implements DataSourceIngestModule {
+
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    private final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+    private final SteganographyDetectionJobSettings settings;
+    private final DetectionMethod detectionMethod;
+    private final ImageSelectionPolicy selectionPolicy;
+    private final int parallelism;
+    private final boolean enabled;  // Only when the job scans whole data sources
+    private IngestJobContext context;
+    private long jobId;
+    private DetectionJobResults results;
+    private ScoringPipeline pipeline;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Scores on the job's worker count of threads (and Python workers), one per core if it is
+     * automatic, independent of Autopsy's file ingest threads.
+     */
+    SteganographyDetectionDataSourceIngestModule(SteganographyDetectionJobSettings settings) {
+        this.settings = settings;
+        this.enabled = settings.getScanMode() == ScanMode.DATA_SOURCE;
+        this.detectionMethod = settings.getDetectionMethod();
+        this.selectionPolicy = settings.createSelectionPolicy();
+        this.parallelism = settings.getEffectiveWorkerCount(SteganographyDetectionJobSettings.getAvailableProcessors());
+    }
+
+    @Override
+    public void startUp(IngestJobContext ijc) throws IngestModuleException {
+        if (!enabled) {
+            return;
+        }
+        logger.log(Level.INFO, "SteganographyDetectionDataSourceIngestModule starting up with " + detectionMethod.getDisplayName()
+                + " on " + parallelism + " threads");
+        context = ijc;
+        jobId = ijc.getJobId();
+        results = DetectionJobResults.acquire(jobId);
+        BlackboardPoster poster = BlackboardPoster.acquire(jobId);
+        pipeline = ScoringPipeline.acquire(jobId, settings, results, new VerdictRecorder(detectionMethod, results, poster), parallelism);
+    }
+
+    @Override
+    public ProcessResult process(Content dataSource, DataSourceIngestModuleProgress progressBar) {
+        if (!enabled) {
+            return ProcessResult.OK;
+        }
+        long[] fileIds;
+        try {
+            fileIds = findCandidates(dataSource);
+        } catch (TskCoreException e) {
+            logger.log(Level.SEVERE, "Error querying the files of " + dataSource.getName(), e);
+            return ProcessResult.ERROR;
+        }
+        logger.log(Level.INFO, "Scanning {0} candidate files", fileIds.length);
+        progressBar.switchToDeterminate(fileIds.length);
+
+        AtomicInteger done = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            ForkJoinTask<Void> scan = pool.submit(new ScanTask(dataSource.getSleuthkitCase(), fileIds, 0, fileIds.length, done));
+            while (true) {
+                try {
+                    scan.get(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    progressBar.progress(done.get());
+                    if (context.dataSourceIngestIsCancelled()) {
+                        cancelled = true;  // Runs not yet started are skipped, running ones finish their batch
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Error scanning " + dataSource.getName(), e);
+            return ProcessResult.ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+            return ProcessResult.OK;
+        } finally {
+            pool.shutdownNow();
+        }
+        progressBar.progress(done.get());
+        if (cancelled) {
+            logger.log(Level.INFO, "Scan cancelled after {0} of {1} files", new Object[]{done.get(), fileIds.length});
+        }
+        return ProcessResult.OK;
+    }
+
+    /**
+     * The IDs of every regular, non-empty file of the data source that is not already typed as
+     * a non-image, ordered by the offset of its first run on disk. Files with no layout (e.g.
+     * local files) come first or last depending on the database.
+     */
+    private long[] findCandidates(Content dataSource) throws TskCoreException {
+        String where = "data_source_obj_id = " + dataSource.getId()
+                + " AND meta_type = " + TskData.TSK_FS_META_TYPE_ENUM.TSK_FS_META_TYPE_REG.getValue()
+                + " AND size > 0"
+                + " AND (mime_type IS NULL OR mime_type LIKE 'image/%' OR mime_type = 'application/octet-stream')"
+                + " ORDER BY (SELECT MIN(byte_start) FROM tsk_file_layout WHERE tsk_file_layout.obj_id = tsk_files.obj_id), obj_id";
+        List<Long> ids = dataSource.getSleuthkitCase().findAllFileIdsWhere(where);
+        long[] fileIds = new long[ids.size()];
+        for (int i = 0; i < fileIds.length; i++) {
+            fileIds[i] = ids.get(i);
+        }
+        return fileIds;
+    }
+
+    /**
+     * Load the files with the given IDs, in the order of the IDs.
+     */
+    private static List<AbstractFile> loadFiles(SleuthkitCase sleuthkitCase, long[] fileIds, int from, int to) throws TskCoreException {
+        StringBuilder where = new StringBuilder("obj_id IN (");
+        for (int i = from; i < to; i++) {
+            where.append(i > from ? "," : "").append(fileIds[i]);
+        }
+        Map<Long, AbstractFile> byId = new HashMap<>();
+        for (AbstractFile file : sleuthkitCase.findAllFilesWhere(where.append(')').toString())) {
+            byId.put(file.getId(), file);
+        }
+        List<AbstractFile> files = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            AbstractFile file = byId.get(fileIds[i]);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public void shutDown() {
+        if (!enabled) {
+            return;
+        }
+        if (pipeline != null) {
+            ScoringPipeline.release(jobId);
+            pipeline = null;
+        }
+        BlackboardPoster.release(jobId);
+        DetectionJobResults jobResults = DetectionJobResults.release(jobId);
+        if (jobResults != null) {
+            DetectionReport.write(jobResults, settings);
+        }
+        logger.log(Level.INFO, "SteganographyDetectionDataSourceIngestModule shutting down");
+    }
+
+    /**
+     * Scores the files fileIds[from, to), splitting until a run fits in one batch.
+     */
+    private class ScanTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final SleuthkitCase sleuthkitCase;
+        private final long[] fileIds;
+        private final int from;
+        private final int to;
+        private final AtomicInteger done;
+
+        ScanTask(SleuthkitCase sleuthkitCase, long[] fileIds, int from, int to, AtomicInteger done) {
+            this.sleuthkitCase = sleuthkitCase;
+            this.fileIds = fileIds;
+            this.from = from;
+            this.to = to;
+            this.done = done;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > pipeline.getBatchSize()) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ScanTask(sleuthkitCase, fileIds, from, middle, done), new ScanTask(sleuthkitCase, fileIds, middle, to, done));
+                return;
+            }
+            if (cancelled) {
+                return;
+            }
+
+            byte[] headerBuffer = new byte[ImageHeader.SNIFF_BYTES];
+            List<AbstractFile> batch = new ArrayList<>(to - from);
+            List<ImageHeader.Format> formats = new ArrayList<>(to - from);
+            try {
+                for (AbstractFile file : loadFiles(sleuthkitCase, fileIds, from, to)) {
+                    ImageHeader header = selectionPolicy.select(file, headerBuffer, results);
+                    if (header != null && !pipeline.restore(file)) {
+                        batch.add(file);
+                        formats.add(header.getFormat());
+                    }
+                }
+                pipeline.scoreNow(batch, formats);
+            } catch (TskCoreException e) {
+                logger.log(Level.SEVERE, "Error loading " + (to - from) + " files to scan, skipping them", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelled = true;
+            }
+            done.addAndGet(to - from);
+        }
+    }
+}
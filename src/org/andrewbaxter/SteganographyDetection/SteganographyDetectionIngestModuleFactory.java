@@ -33,12 +33,69 @@ import org.sleuthkit.autopsy.ingest.IngestModuleGlobalSettingsPanel;
 import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettingsPanel;
 import org.sleuthkit.autopsy.ingest.DataSourceIngestModule;
 import org.sleuthkit.autopsy.ingest.FileIngestModule;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
 import org.openide.util.Exceptions;
 
 @ServiceProvider(service = IngestModuleFactory.class)
 public class SteganographyDetectionIngestModuleFactory extends IngestModuleFactoryAdapter {
 
+    static final int VERDICT_CACHE_SIZE = 100000;  // Verdicts kept in memory, the on-disk stores are unbounded
+    static final ScanMode DEFAULT_SCAN_MODE = ScanMode.PER_FILE;
+
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+    private static VerdictCache verdictCache;
+    private static String verdictCacheCaseDirectory;
+    private static VerdictLedger verdictLedger;
+    private static String verdictLedgerCaseDirectory;
+
+    /**
+     * The verdict cache for the current case, shared by every ingest job run on it.
+     */
+    static synchronized VerdictCache getVerdictCache() {
+        String caseDirectory = Case.getCurrentCase().getCaseDirectory();
+        if (verdictCache == null || !caseDirectory.equals(verdictCacheCaseDirectory)) {
+            if (verdictCache != null) {
+                verdictCache.close();
+            }
+            File caseStore = Paths.get(Case.getCurrentCase().getModuleDirectory(), "SteganographyDetection", "verdicts.db").toFile();
+            File sharedStore = Paths.get(PlatformUtil.getUserDirectory(), "SteganographyDetection", "verdicts.db").toFile();
+            verdictCache = new VerdictCache(VERDICT_CACHE_SIZE, caseStore, sharedStore);
+            verdictCacheCaseDirectory = caseDirectory;
+        }
+        return verdictCache;
+    }
+
+    /**
+     * The verdict ledger for the current case, shared by every ingest job run on it.
+     * Null if it can't be opened, in which case every file is scored.
+     */
+    static synchronized VerdictLedger getVerdictLedger() {
+        String caseDirectory = Case.getCurrentCase().getCaseDirectory();
+        if (verdictLedger == null || !caseDirectory.equals(verdictLedgerCaseDirectory)) {
+            if (verdictLedger != null) {
+                verdictLedger.close();
+                verdictLedger = null;
+            }
+            File ledgerFile = Paths.get(Case.getCurrentCase().getModuleDirectory(), "SteganographyDetection", "ledger.db").toFile();
+            try {
+                verdictLedger = new VerdictLedger(ledgerFile);
+                verdictLedgerCaseDirectory = caseDirectory;
+            } catch (IOException e) {
+                logger.log(Level.WARNING,
+                        "Could not open verdict ledger " + ledgerFile + ", scoring every file", e);
+            }
+        }
+        return verdictLedger;
+    }
+
     @Override
     public String getModuleDisplayName() {
         return "StegCatcher";
@@ -61,32 +118,43 @@ public class SteganographyDetectionIngestModuleFactory extends IngestModuleFacto
 
     @Override
     public FileIngestModule createFileIngestModule(IngestModuleIngestJobSettings settings) {
-        return new SteganographyDetectionFileIngestModule();
+        return new SteganographyDetectionFileIngestModule(toJobSettings(settings));
     }
 
     @Override
     public DataSourceIngestModule createDataSourceIngestModule(IngestModuleIngestJobSettings settings) {
-        throw new UnsupportedOperationException("No data source ingest module provided.");
+        // Idle unless the job scans whole data sources, the file ingest module does the work otherwise
+        return new SteganographyDetectionDataSourceIngestModule(toJobSettings(settings));
     }
 
     @Override
     public boolean isDataSourceIngestModuleFactory() {
-        return false;
+        return true;
     }
 
     @Override
     public IngestModuleIngestJobSettings getDefaultIngestJobSettings() {
-        return null; // Using default settings
+        return new SteganographyDetectionJobSettings();
     }
 
     @Override
     public boolean hasIngestJobSettingsPanel() {
-        return false; // No custom settings panel required
+        return true;
     }
 
     @Override
     public IngestModuleIngestJobSettingsPanel getIngestJobSettingsPanel(IngestModuleIngestJobSettings settings) {
-        return null; // No custom settings panel required
+        return new SteganographyDetectionJobSettingsPanel(toJobSettings(settings));
+    }
+
+    private static SteganographyDetectionJobSettings toJobSettings(IngestModuleIngestJobSettings settings) {
+        if (settings == null) {
+            return new SteganographyDetectionJobSettings();  // Jobs started without settings, e.g. from older profiles
+        }
+        if (!(settings instanceof SteganographyDetectionJobSettings)) {
+            throw new IllegalArgumentException("Expected settings argument to be instanceof SteganographyDetectionJobSettings");
+        }
+        return (SteganographyDetectionJobSettings) settings;
     }
 
     @Override
@@ -0,0 +1,225 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.util.EnumSet;
+import java.util.Set;
+import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettings;
+
+/**
+ * Per-job settings, chosen in SteganographyDetectionJobSettingsPanel. Triage runs can trade
+ * recall for speed (pre-filter, smaller images, fewer workers) while full runs scan everything.
+ * Values are clamped to their ranges when set, so a stale or hand-edited settings file can't
+ * start a job with a budget the machine can't meet.
+ */
+public class SteganographyDetectionJobSettings implements IngestModuleIngestJobSettings {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int AUTO_WORKER_COUNT = 0;  // One per ingest thread, or per core for data source scans
+    static final int MAX_BATCH_SIZE = 1024;
+    static final int DEFAULT_TIMEOUT_SECONDS = 60;
+    static final int MAX_TIMEOUT_SECONDS = 3600;
+    static final int MAX_IMAGE_MEGABYTES = (int) (ImageSelectionPolicy.MAX_SUPPORTED_BYTES >> 20);
+    static final int DEFAULT_MEMORY_BUDGET_MEGABYTES = 512;
+    static final int MIN_MEMORY_BUDGET_MEGABYTES = 64;
+    static final int MAX_MEMORY_BUDGET_MEGABYTES = 16 * 1024;
+
+    private ScanMode scanMode = SteganographyDetectionIngestModuleFactory.DEFAULT_SCAN_MODE;
+    private DetectionMethod detectionMethod = DetectionMethod.SVM;
+    private int workerCount = AUTO_WORKER_COUNT;
+    private int batchSize = ScoringPipeline.DEFAULT_BATCH_SIZE;
+    private int timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+    private int maxImageMegabytes = (int) (ImageSelectionPolicy.DEFAULT_MAX_BYTES >> 20);
+    private int minDimension = ImageSelectionPolicy.DEFAULT_MIN_DIMENSION;
+    private EnumSet<ImageHeader.Format> formats = EnumSet.allOf(ImageHeader.Format.class);  // Null in settings saved before it existed
+    private int memoryBudgetMegabytes = DEFAULT_MEMORY_BUDGET_MEGABYTES;
+    private boolean cacheEnabled = true;
+    private boolean rescanAll = false;  // False in settings saved before it existed
+    private ReportFormat reportFormat = ReportFormat.HTML_WITH_CHART;
+    private double cleanBelow = LsbScreen.DEFAULT_CLEAN_BELOW;
+    private double suspectedAbove = LsbScreen.DEFAULT_SUSPECTED_ABOVE;
+
+    @Override
+    public long getVersionNumber() {
+        return serialVersionUID;
+    }
+
+    ScanMode getScanMode() {
+        return scanMode;
+    }
+
+    void setScanMode(ScanMode scanMode) {
+        this.scanMode = scanMode;
+    }
+
+    DetectionMethod getDetectionMethod() {
+        return detectionMethod;
+    }
+
+    void setDetectionMethod(DetectionMethod detectionMethod) {
+        this.detectionMethod = detectionMethod;
+    }
+
+    /**
+     * The configured worker count, AUTO_WORKER_COUNT to size it from the ingest threads.
+     */
+    int getWorkerCount() {
+        return workerCount;
+    }
+
+    void setWorkerCount(int workerCount) {
+        this.workerCount = clamp(workerCount, AUTO_WORKER_COUNT, getAvailableProcessors());
+    }
+
+    /**
+     * The number of scoring threads (and Python workers) a job actually starts: the configured
+     * count, or autoCount if it is automatic, never more than the machine's cores.
+     */
+    int getEffectiveWorkerCount(int autoCount) {
+        int count = workerCount == AUTO_WORKER_COUNT ? autoCount : workerCount;
+        return clamp(count, 1, getAvailableProcessors());
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    void setBatchSize(int batchSize) {
+        this.batchSize = clamp(batchSize, 1, MAX_BATCH_SIZE);
+    }
+
+    int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    void setTimeoutSeconds(int timeoutSeconds) {
+        this.timeoutSeconds = clamp(timeoutSeconds, 1, MAX_TIMEOUT_SECONDS);
+    }
+
+    int getMaxImageMegabytes() {
+        return maxImageMegabytes;
+    }
+
+    void setMaxImageMegabytes(int maxImageMegabytes) {
+        this.maxImageMegabytes = clamp(maxImageMegabytes, 1, MAX_IMAGE_MEGABYTES);
+    }
+
+    int getMinDimension() {
+        return minDimension;
+    }
+
+    void setMinDimension(int minDimension) {
+        this.minDimension = clamp(minDimension, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The image formats a job scores, every format if none is chosen.
+     */
+    Set<ImageHeader.Format> getFormats() {
+        return formats == null || formats.isEmpty() ? EnumSet.allOf(ImageHeader.Format.class) : EnumSet.copyOf(formats);
+    }
+
+    void setFormats(Set<ImageHeader.Format> formats) {
+        this.formats = formats.isEmpty() ? EnumSet.allOf(ImageHeader.Format.class) : EnumSet.copyOf(formats);
+    }
+
+    int getMemoryBudgetMegabytes() {
+        return memoryBudgetMegabytes;
+    }
+
+    void setMemoryBudgetMegabytes(int memoryBudgetMegabytes) {
+        this.memoryBudgetMegabytes = clamp(memoryBudgetMegabytes, MIN_MEMORY_BUDGET_MEGABYTES, MAX_MEMORY_BUDGET_MEGABYTES);
+    }
+
+    /**
+     * The most image content a job holds in memory at once, never more than half the heap.
+     */
+    long getEffectiveMemoryBudgetBytes() {
+        return Math.min((long) memoryBudgetMegabytes << 20, Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    /**
+     * Rescore files an earlier job on the case already scored, e.g. to check a suspected regression.
+     */
+    boolean isRescanAll() {
+        return rescanAll;
+    }
+
+    void setRescanAll(boolean rescanAll) {
+        this.rescanAll = rescanAll;
+    }
+
+    ReportFormat getReportFormat() {
+        return reportFormat;
+    }
+
+    void setReportFormat(ReportFormat reportFormat) {
+        this.reportFormat = reportFormat;
+    }
+
+    double getCleanBelow() {
+        return cleanBelow;
+    }
+
+    double getSuspectedAbove() {
+        return suspectedAbove;
+    }
+
+    /**
+     * Pre-filter thresholds for the tiered method, see LsbScreen.
+     */
+    void setPreFilterThresholds(double cleanBelow, double suspectedAbove) {
+        this.cleanBelow = Math.max(0.0, Math.min(cleanBelow, 1.0));
+        this.suspectedAbove = Math.max(this.cleanBelow, Math.min(suspectedAbove, 1.0));
+    }
+
+    /**
+     * The pre-filter to run before the classifier, null unless the method is tiered.
+     */
+    LsbScreen createLsbScreen() {
+        return detectionMethod == DetectionMethod.TIERED ? new LsbScreen(cleanBelow, suspectedAbove) : null;
+    }
+
+    ImageSelectionPolicy createSelectionPolicy() {
+        return new ImageSelectionPolicy(getFormats(), minDimension,
+                ImageSelectionPolicy.DEFAULT_MAX_PIXELS, (long) maxImageMegabytes << 20);
+    }
+
+    static int getAvailableProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(value, max));
+    }
+}
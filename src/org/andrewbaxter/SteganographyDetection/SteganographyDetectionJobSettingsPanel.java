@@ -0,0 +1,205 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettings;
+import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettingsPanel;
+
+/**
+ * Per-job settings: what to run, how much CPU and memory it may use and what report to write.
+ */
+final class SteganographyDetectionJobSettingsPanel extends IngestModuleIngestJobSettingsPanel {
+
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_MIN_DIMENSION = 65535;
+
+    private final JComboBox<DetectionMethod> detectionMethod = new JComboBox<>(DetectionMethod.values());
+    private final JComboBox<ScanMode> scanMode = new JComboBox<>(ScanMode.values());
+    private final JSpinner workerCount;
+    private final JSpinner batchSize;
+    private final JSpinner timeoutSeconds;
+    private final JSpinner maxImageMegabytes;
+    private final JSpinner minDimension;
+    private final JSpinner memoryBudgetMegabytes;
+    private final Map<ImageHeader.Format, JCheckBox> formats = new EnumMap<>(ImageHeader.Format.class);
+    private final JCheckBox cacheEnabled = new JCheckBox("Reuse verdicts of previously scored images");
+    private final JCheckBox rescanAll = new JCheckBox("Rescore files already scored in this case");
+    private final JComboBox<ReportFormat> reportFormat = new JComboBox<>(ReportFormat.values());
+    private final JSpinner cleanBelow;
+    private final JSpinner suspectedAbove;
+    private int row = 0;
+
+    SteganographyDetectionJobSettingsPanel(SteganographyDetectionJobSettings settings) {
+        // Settings saved on a machine with more cores are shown capped to this one's
+        int processors = SteganographyDetectionJobSettings.getAvailableProcessors();
+        workerCount = new JSpinner(new SpinnerNumberModel(Math.min(settings.getWorkerCount(), processors),
+                SteganographyDetectionJobSettings.AUTO_WORKER_COUNT, processors, 1));
+        batchSize = new JSpinner(new SpinnerNumberModel(settings.getBatchSize(), 1, SteganographyDetectionJobSettings.MAX_BATCH_SIZE, 1));
+        timeoutSeconds = new JSpinner(new SpinnerNumberModel(settings.getTimeoutSeconds(), 1, SteganographyDetectionJobSettings.MAX_TIMEOUT_SECONDS, 5));
+        maxImageMegabytes = new JSpinner(new SpinnerNumberModel(settings.getMaxImageMegabytes(), 1, SteganographyDetectionJobSettings.MAX_IMAGE_MEGABYTES, 16));
+        minDimension = new JSpinner(new SpinnerNumberModel(Math.min(settings.getMinDimension(), MAX_MIN_DIMENSION), 1, MAX_MIN_DIMENSION, 16));
+        memoryBudgetMegabytes = new JSpinner(new SpinnerNumberModel(settings.getMemoryBudgetMegabytes(),
+                SteganographyDetectionJobSettings.MIN_MEMORY_BUDGET_MEGABYTES, SteganographyDetectionJobSettings.MAX_MEMORY_BUDGET_MEGABYTES, 64));
+        cleanBelow = new JSpinner(new SpinnerNumberModel(settings.getCleanBelow(), 0.0, 1.0, 0.0001));
+        cleanBelow.setEditor(new JSpinner.NumberEditor(cleanBelow, "0.0#####"));
+        suspectedAbove = new JSpinner(new SpinnerNumberModel(settings.getSuspectedAbove(), 0.0, 1.0, 0.01));
+        suspectedAbove.setEditor(new JSpinner.NumberEditor(suspectedAbove, "0.0#####"));
+
+        JPanel formatBoxes = new JPanel(new FlowLayout(FlowLayout.LEADING, 0, 0));
+        Set<ImageHeader.Format> enabledFormats = settings.getFormats();
+        for (ImageHeader.Format format : ImageHeader.Format.values()) {
+            JCheckBox box = new JCheckBox(format.name(), enabledFormats.contains(format));
+            formats.put(format, box);
+            formatBoxes.add(box);
+        }
+
+        detectionMethod.setSelectedItem(settings.getDetectionMethod());
+        scanMode.setSelectedItem(settings.getScanMode());
+        cacheEnabled.setSelected(settings.isCacheEnabled());
+        rescanAll.setSelected(settings.isRescanAll());
+        reportFormat.setSelectedItem(settings.getReportFormat());
+        detectionMethod.setRenderer(new DisplayNameRenderer());
+        scanMode.setRenderer(new DisplayNameRenderer());
+        reportFormat.setRenderer(new DisplayNameRenderer());
+        detectionMethod.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updatePreFilterFields();
+            }
+        });
+
+        setLayout(new GridBagLayout());
+        addRow("Detection method:", detectionMethod);
+        addRow("Scan:", scanMode);
+        addRow("Scoring workers (0 = automatic):", workerCount);
+        addRow("Images per batch:", batchSize);
+        addRow("Timeout per image (seconds):", timeoutSeconds);
+        addRow("Largest image to scan (MB):", maxImageMegabytes);
+        addRow("Smallest width or height (pixels):", minDimension);
+        addRow("Formats to scan (none = all):", formatBoxes);
+        addRow("Memory for image content (MB):", memoryBudgetMegabytes);
+        addRow("Pre-filter clean below p-value:", cleanBelow);
+        addRow("Pre-filter suspected above p-value:", suspectedAbove);
+        addRow("Report format:", reportFormat);
+        addRow(null, cacheEnabled);
+        addRow(null, rescanAll);
+
+        GridBagConstraints filler = new GridBagConstraints();
+        filler.gridy = row;
+        filler.weighty = 1.0;
+        add(new JLabel(), filler);  // Keeps the rows at the top
+        updatePreFilterFields();
+    }
+
+    private void addRow(String label, JComponent component) {
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.gridy = row++;
+        constraints.insets = new Insets(2, 4, 2, 4);
+        constraints.anchor = GridBagConstraints.WEST;
+        if (label != null) {
+            constraints.gridx = 0;
+            add(new JLabel(label), constraints);
+        }
+        constraints.gridx = 1;
+        constraints.fill = GridBagConstraints.HORIZONTAL;
+        constraints.weightx = 1.0;
+        add(component, constraints);
+    }
+
+    // The thresholds only matter for the tiered method
+    private void updatePreFilterFields() {
+        boolean tiered = detectionMethod.getSelectedItem() == DetectionMethod.TIERED;
+        cleanBelow.setEnabled(tiered);
+        suspectedAbove.setEnabled(tiered);
+    }
+
+    @Override
+    public IngestModuleIngestJobSettings getSettings() {
+        SteganographyDetectionJobSettings settings = new SteganographyDetectionJobSettings();
+        settings.setDetectionMethod((DetectionMethod) detectionMethod.getSelectedItem());
+        settings.setScanMode((ScanMode) scanMode.getSelectedItem());
+        settings.setWorkerCount(((Number) workerCount.getValue()).intValue());
+        settings.setBatchSize(((Number) batchSize.getValue()).intValue());
+        settings.setTimeoutSeconds(((Number) timeoutSeconds.getValue()).intValue());
+        settings.setMaxImageMegabytes(((Number) maxImageMegabytes.getValue()).intValue());
+        settings.setMinDimension(((Number) minDimension.getValue()).intValue());
+        settings.setMemoryBudgetMegabytes(((Number) memoryBudgetMegabytes.getValue()).intValue());
+        Set<ImageHeader.Format> enabledFormats = EnumSet.noneOf(ImageHeader.Format.class);
+        for (Map.Entry<ImageHeader.Format, JCheckBox> entry : formats.entrySet()) {
+            if (entry.getValue().isSelected()) {
+                enabledFormats.add(entry.getKey());
+            }
+        }
+        settings.setFormats(enabledFormats);
+        settings.setPreFilterThresholds(((Number) cleanBelow.getValue()).doubleValue(), ((Number) suspectedAbove.getValue()).doubleValue());
+        settings.setCacheEnabled(cacheEnabled.isSelected());
+        settings.setRescanAll(rescanAll.isSelected());
+        settings.setReportFormat((ReportFormat) reportFormat.getSelectedItem());
+        return settings;
+    }
+
+    /**
+     * Shows the display name of the enums in the combo boxes.
+     */
+    private static final class DisplayNameRenderer extends DefaultListCellRenderer {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                boolean isSelected, boolean cellHasFocus) {
+            String text;
+            if (value instanceof DetectionMethod) {
+                text = ((DetectionMethod) value).getDisplayName();
+            } else if (value instanceof ScanMode) {
+                text = ((ScanMode) value).getDisplayName();
+            } else if (value instanceof ReportFormat) {
+                text = ((ReportFormat) value).getDisplayName();
+            } else {
+                text = String.valueOf(value);
+            }
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+    }
+}
@@ -24,18 +24,39 @@ package org.andrewbaxter.SteganographyDetection;
  * SOFTWARE.
  */
 
+/**
+ * One hit, written to the job's FindingsLog as soon as it is found rather than kept in memory.
+ */
 public class SuspectedFile {
+    private final long objectId;
     private final String filePath;
+    private final String md5;  // Null if the content was never read, e.g. a verdict cached by hash
+    private final double score;  // SVC decision or pre-filter p-value, NaN if the worker gave none
     private final String detectionMethod;
+    private final String detectionStage;
+    private final String location;  // Where in the image the payload probably is, null if unknown
+    private final long elapsedMillis;  // From queueing the file to its verdict
 
-    public SuspectedFile(String filePath, String detectionMethod) {
+    public SuspectedFile(long objectId, String filePath, String md5, double score, String detectionMethod, String detectionStage,
+            String location, long elapsedMillis) {
+        this.objectId = objectId;
         this.filePath = filePath;
+        this.md5 = md5;
+        this.score = score;
         this.detectionMethod = detectionMethod;
-
+        this.detectionStage = detectionStage;
+        this.location = location;
+        this.elapsedMillis = elapsedMillis;
     }
 
     // Getters
+    public long getObjectId() { return objectId; }
     public String getFilePath() { return filePath; }
+    public String getMd5() { return md5; }
+    public double getScore() { return score; }
     public String getDetectionMethod() { return detectionMethod; }
+    public String getDetectionStage() { return detectionStage; }
+    public String getLocation() { return location; }
+    public long getElapsedMillis() { return elapsedMillis; }
 
 }
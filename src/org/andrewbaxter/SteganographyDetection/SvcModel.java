@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The StandardScaler and binary SVC from scaler.joblib and SVC_model.pkl, exported by
+ * scripts/export_model.py into a flat big-endian file so images can be scored without Python.
+ * Immutable once loaded, so one instance is shared by every ingest thread.
+ */
+class SvcModel {
+
+    static final String RESOURCE_PATH = "/org/andrewbaxter/SteganographyDetection/models/SVC_model.bin";
+
+    private static final byte[] MAGIC = {'S', 'T', 'E', 'G', 'S', 'V', 'C', '1'};
+
+    private final String version;
+    private final String kernel;
+    private final double gamma;
+    private final double coef0;
+    private final int degree;
+    private final double[] mean;
+    private final double[] scale;
+    private final int[] classes;
+    private final double[] dualCoef;
+    private final double intercept;
+    private final double[] supportVectors;  // Row-major, one row per support vector
+
+    private SvcModel(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not an exported SVC model file");
+        }
+        version = in.readUTF();
+        kernel = in.readUTF();
+        gamma = in.readDouble();
+        coef0 = in.readDouble();
+        degree = in.readInt();
+
+        int featureCount = in.readInt();
+        if (featureCount != SpamFeatureExtractor.FEATURE_COUNT) {
+            throw new IOException("Model expects " + featureCount + " features, SPAM extraction produces " + SpamFeatureExtractor.FEATURE_COUNT);
+        }
+        mean = readDoubles(in, featureCount);
+        scale = readDoubles(in, featureCount);
+        classes = new int[]{in.readInt(), in.readInt()};
+
+        int supportVectorCount = in.readInt();
+        dualCoef = readDoubles(in, supportVectorCount);
+        intercept = in.readDouble();
+        supportVectors = readDoubles(in, supportVectorCount * featureCount);
+
+        if (!"rbf".equals(kernel) && !"linear".equals(kernel) && !"poly".equals(kernel) && !"sigmoid".equals(kernel)) {
+            throw new IOException("Unsupported SVC kernel " + kernel);
+        }
+    }
+
+    static SvcModel load(InputStream stream) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            return new SvcModel(in);
+        }
+    }
+
+    /**
+     * Load the model bundled with the module, or return null if it was not exported into the build.
+     */
+    static SvcModel loadBundled() throws IOException {
+        InputStream stream = SvcModel.class.getResourceAsStream(RESOURCE_PATH);
+        if (stream == null) {
+            return null;
+        }
+        return load(stream);
+    }
+
+    private static double[] readDoubles(DataInputStream in, int count) throws IOException {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    /**
+     * The SVC decision_function for unscaled features, positive values mean the second class.
+     */
+    double decisionFunction(double[] features) {
+        int featureCount = mean.length;
+        double[] scaled = new double[featureCount];
+        for (int i = 0; i < featureCount; i++) {
+            scaled[i] = (features[i] - mean[i]) / scale[i];
+        }
+
+        double decision = 0;
+        for (int sv = 0; sv < dualCoef.length; sv++) {
+            decision += dualCoef[sv] * kernel(scaled, sv * featureCount);
+        }
+        return decision + intercept;
+    }
+
+    /**
+     * Same as the script's model.predict(...) == 1.
+     */
+    boolean isStego(double decision) {
+        return (decision > 0 ? classes[1] : classes[0]) == 1;
+    }
+
+    private double kernel(double[] x, int offset) {
+        int featureCount = x.length;
+        switch (kernel) {
+            case "rbf": {
+                double distance = 0;
+                for (int i = 0; i < featureCount; i++) {
+                    double d = x[i] - supportVectors[offset + i];
+                    distance += d * d;
+                }
+                return Math.exp(-gamma * distance);
+            }
+            case "linear":
+                return dot(x, offset);
+            case "poly":
+                return Math.pow(gamma * dot(x, offset) + coef0, degree);
+            default:
+                return Math.tanh(gamma * dot(x, offset) + coef0);
+        }
+    }
+
+    private double dot(double[] x, int offset) {
+        double sum = 0;
+        for (int i = 0; i < x.length; i++) {
+            sum += x[i] * supportVectors[offset + i];
+        }
+        return sum;
+    }
+}
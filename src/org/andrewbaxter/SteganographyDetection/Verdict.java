@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of scoring one image: the prediction, the score behind it (the SVC decision
+ * value or the pre-filter p-value, NaN when the scorer did not report one), the model that
+ * produced it and the pipeline stage that decided it. Tiled scoring also reports a score
+ * per tile; other verdicts, including cached ones, have none.
+ */
+final class Verdict {
+
+    private final boolean suspected;
+    private final double score;
+    private final String modelVersion;
+    private final DetectionStage stage;
+    private final List<TileScore> tiles;
+
+    Verdict(boolean suspected, double score, String modelVersion, DetectionStage stage) {
+        this(suspected, score, modelVersion, stage, Collections.<TileScore>emptyList());
+    }
+
+    Verdict(boolean suspected, double score, String modelVersion, DetectionStage stage, List<TileScore> tiles) {
+        this.suspected = suspected;
+        this.score = score;
+        this.modelVersion = modelVersion;
+        this.stage = stage;
+        this.tiles = Collections.unmodifiableList(tiles);
+    }
+
+    Verdict fromCache() {
+        return new Verdict(suspected, score, modelVersion, DetectionStage.CACHE);
+    }
+
+    boolean isSuspected() {
+        return suspected;
+    }
+
+    double getScore() {
+        return score;
+    }
+
+    String getModelVersion() {
+        return modelVersion;
+    }
+
+    DetectionStage getStage() {
+        return stage;
+    }
+
+    List<TileScore> getTiles() {
+        return tiles;
+    }
+
+    /**
+     * The tile most likely to hold a payload, or null if there are no tile scores.
+     */
+    TileScore getTopTile() {
+        TileScore top = null;
+        for (TileScore tile : tiles) {
+            if (top == null || tile.getScore() > top.getScore()) {
+                top = tile;
+            }
+        }
+        return top;
+    }
+}
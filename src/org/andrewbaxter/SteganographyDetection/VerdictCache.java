@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+
+/**
+ * Verdicts by content MD5 and model version, so duplicate images are only scored once per model.
+ * A bounded in-memory LRU sits in front of two on-disk stores: one in the case
+ * directory and one in the user directory that is shared by every case.
+ */
+class VerdictCache {
+
+    private static final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+
+    private final Map<String, Verdict> recent;  // By MD5 and model version, see recentKey()
+    private final VerdictStore caseStore;
+    private final VerdictStore sharedStore;
+
+    VerdictCache(final int maxEntries, File caseStoreFile, File sharedStoreFile) {
+        this.recent = new LinkedHashMap<String, Verdict>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.caseStore = openStore(caseStoreFile);
+        this.sharedStore = openStore(sharedStoreFile);
+    }
+
+    private static VerdictStore openStore(File storeFile) {
+        if (storeFile == null) {
+            return null;
+        }
+        try {
+            return new VerdictStore(storeFile);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not open verdict store " + storeFile + ", continuing without it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the verdict for an MD5 (32 hex digits) if it was scored by the given model version.
+     */
+    Verdict get(String md5, String modelVersion) {
+        String recentKey = recentKey(md5, modelVersion);
+        Verdict verdict;
+        synchronized (recent) {
+            verdict = recent.get(recentKey);
+        }
+        if (verdict != null) {
+            return verdict.fromCache();
+        }
+
+        byte[] key = toBytes(md5);
+        verdict = lookup(caseStore, key, modelVersion);
+        if (verdict == null) {
+            verdict = lookup(sharedStore, key, modelVersion);
+            if (verdict != null) {
+                store(caseStore, key, verdict);
+            }
+        }
+        if (verdict == null) {
+            return null;
+        }
+        synchronized (recent) {
+            recent.put(recentKey, verdict);
+        }
+        return verdict;
+    }
+
+    void put(String md5, Verdict verdict) {
+        synchronized (recent) {
+            recent.put(recentKey(md5, verdict.getModelVersion()), verdict);
+        }
+        byte[] key = toBytes(md5);
+        store(caseStore, key, verdict);
+        store(sharedStore, key, verdict);
+    }
+
+    void close() {
+        if (caseStore != null) {
+            caseStore.close();
+        }
+        if (sharedStore != null) {
+            sharedStore.close();
+        }
+    }
+
+    private static Verdict lookup(VerdictStore store, byte[] key, String modelVersion) {
+        if (store == null) {
+            return null;
+        }
+        try {
+            return store.get(key, modelVersion);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error reading verdict store", e);
+            return null;
+        }
+    }
+
+    private static void store(VerdictStore store, byte[] key, Verdict verdict) {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.put(key, verdict);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error writing verdict store", e);
+        }
+    }
+
+    private static String recentKey(String md5, String modelVersion) {
+        return md5 + "/" + modelVersion;
+    }
+
+    private static byte[] toBytes(String md5) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            bytes[i] = (byte) Integer.parseInt(md5.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
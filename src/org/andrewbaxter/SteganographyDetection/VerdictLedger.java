@@ -0,0 +1,262 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * On-disk record of the last verdict of every file scored in a case, keyed by object ID,
+ * so a later ingest job only rescores files that are new, changed or were scored by
+ * another model. Laid out like VerdictStore: an open addressing hash table read and
+ * written slot by slot with positional channel I/O.
+ */
+class VerdictLedger {
+
+    private static final byte[] MAGIC = {'S', 'T', 'E', 'G', 'L', 'D', 'G', '2'};
+    private static final int HEADER_SIZE = 32;
+    // Object ID (8), MD5 (16), scoring version key (8), flags (1), padding (7), score (8), size (8)
+    private static final int SLOT_SIZE = 56;
+    private static final int VERSION = 24;
+    private static final int FLAGS = 32;
+    private static final int SCORE = 40;
+    private static final int SIZE = 48;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD = 0.7;
+    private static final byte USED = 1;
+    private static final byte SUSPECTED = 2;
+    private static final byte PRE_FILTERED = 4;  // Decided by the pre-filter, so the score is a p-value
+
+    /**
+     * A file's verdict as the ledger last saw it.
+     */
+    static final class Entry {
+
+        private final String md5;
+        private final long size;
+        private final long versionKey;
+        private final byte flags;
+        private final double score;
+
+        private Entry(String md5, long size, long versionKey, byte flags, double score) {
+            this.md5 = md5;
+            this.size = size;
+            this.versionKey = versionKey;
+            this.flags = flags;
+            this.score = score;
+        }
+
+        /**
+         * True if the entry was scored the same way and the file still has the same content.
+         * A file whose MD5 has not been calculated yet is compared by size only.
+         */
+        boolean isCurrent(String scoringVersion, long fileSize, String fileMd5) {
+            if (versionKey != VerdictStore.versionKey(scoringVersion) || size != fileSize) {
+                return false;
+            }
+            return fileMd5 == null || fileMd5.isEmpty() || fileMd5.equalsIgnoreCase(md5);
+        }
+
+        String getMd5() {
+            return md5;
+        }
+
+        boolean isSuspected() {
+            return (flags & SUSPECTED) != 0;
+        }
+
+        boolean isPreFiltered() {
+            return (flags & PRE_FILTERED) != 0;
+        }
+
+        double getScore() {
+            return score;
+        }
+    }
+
+    private final File file;
+    private FileChannel channel;
+    private int capacity;
+    private int count;
+    private final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+
+    VerdictLedger(File file) throws IOException {
+        this.file = file;
+        file.getParentFile().mkdirs();
+        if (!file.exists() || !open(file)) {
+            create(file, INITIAL_CAPACITY);
+            open(file);
+        }
+    }
+
+    private boolean open(File ledgerFile) throws IOException {
+        channel = FileChannel.open(ledgerFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE) {
+            channel.close();
+            return false;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        capacity = header.getInt();
+        count = header.getInt();
+        if (!Arrays.equals(magic, MAGIC) || capacity <= 0 || channel.size() < HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            channel.close();
+            return false;  // Damaged or foreign file, start again
+        }
+        return true;
+    }
+
+    private static void create(File ledgerFile, int capacity) throws IOException {
+        try (FileChannel newChannel = FileChannel.open(ledgerFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putInt(capacity).putInt(0);
+            header.rewind();
+            newChannel.write(header, 0);
+            // Zero filled slots are empty
+            newChannel.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) capacity * SLOT_SIZE - 1);
+        }
+    }
+
+    synchronized Entry get(long objectId) throws IOException {
+        if (find(objectId) < 0 || slot.get(FLAGS) == 0) {
+            return null;
+        }
+        byte[] md5 = new byte[16];
+        slot.position(8);
+        slot.get(md5);
+        return new Entry(toHex(md5), slot.getLong(SIZE), slot.getLong(VERSION), slot.get(FLAGS), slot.getDouble(SCORE));
+    }
+
+    /**
+     * Record a file's verdict, replacing what the ledger held for it.
+     */
+    synchronized void put(long objectId, String md5, long size, String scoringVersion, Verdict verdict) throws IOException {
+        if (count + 1 > capacity * MAX_LOAD) {
+            grow();
+        }
+        long position = find(objectId);
+        boolean isNew = slot.get(FLAGS) == 0;
+        byte flags = (byte) (USED | (verdict.isSuspected() ? SUSPECTED : 0)
+                | (verdict.getStage() == DetectionStage.PRE_FILTER ? PRE_FILTERED : 0));
+        writeSlot(channel, position, objectId, fromHex(md5), VerdictStore.versionKey(scoringVersion), flags, verdict.getScore(), size);
+        if (isNew) {
+            count++;
+            writeCount();
+        }
+    }
+
+    synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Find the slot holding objectId, or the empty slot where it belongs, leaving its content in slot.
+     */
+    private long find(long objectId) throws IOException {
+        // Object IDs are sequential, so spread them before taking the index
+        long hash = (objectId * 0x9E3779B97F4A7C15L) >>> 1;
+        int index = (int) (hash % capacity);
+        for (int probe = 0; probe < capacity; probe++) {
+            long position = HEADER_SIZE + (long) index * SLOT_SIZE;
+            slot.clear();
+            channel.read(slot, position);
+            if (slot.get(FLAGS) == 0 || slot.getLong(0) == objectId) {
+                return position;
+            }
+            index = (index + 1) % capacity;
+        }
+        return -1;
+    }
+
+    private static void writeSlot(FileChannel target, long position, long objectId, byte[] md5, long versionKey,
+            byte flags, double score, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+        buffer.putLong(objectId).put(md5, 0, 16).putLong(versionKey).put(flags).put(new byte[7]).putDouble(score).putLong(size);
+        buffer.flip();
+        target.write(buffer, position);
+    }
+
+    private void writeCount() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(count).flip();
+        channel.write(buffer, MAGIC.length + 4);
+    }
+
+    /**
+     * Rehash every slot into a file twice the size, then swap it in.
+     */
+    private void grow() throws IOException {
+        File grown = new File(file.getPath() + ".new");
+        create(grown, capacity * 2);
+        VerdictLedger target = new VerdictLedger(grown);
+        ByteBuffer old = ByteBuffer.allocate(SLOT_SIZE);
+        byte[] md5 = new byte[16];
+        for (int index = 0; index < capacity; index++) {
+            old.clear();
+            channel.read(old, HEADER_SIZE + (long) index * SLOT_SIZE);
+            if (old.get(FLAGS) == 0) {
+                continue;
+            }
+            long objectId = old.getLong(0);
+            old.position(8);
+            old.get(md5);
+            long position = target.find(objectId);
+            writeSlot(target.channel, position, objectId, md5, old.getLong(VERSION), old.get(FLAGS), old.getDouble(SCORE), old.getLong(SIZE));
+            target.count++;
+        }
+        target.writeCount();
+        target.close();
+        channel.close();
+        Files.move(grown.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        open(file);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < bytes.length && 2 * i + 1 < hex.length(); i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
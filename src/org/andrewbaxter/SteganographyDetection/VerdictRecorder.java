@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.sleuthkit.autopsy.ingest.IngestMessage;
+import org.sleuthkit.autopsy.ingest.IngestServices;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Records each verdict of a job in its results and, for suspected files, posts an ingest
+ * message, a tag and an artifact.
+ */
+class VerdictRecorder implements ScoringPipeline.VerdictListener {
+
+    private final Logger logger = IngestServices.getInstance().getLogger("SteganographyDetection");
+    private final DetectionMethod detectionMethod;
+    private final DetectionJobResults results;
+    private final BlackboardPoster poster;
+
+    VerdictRecorder(DetectionMethod detectionMethod, DetectionJobResults results, BlackboardPoster poster) {
+        this.detectionMethod = detectionMethod;
+        this.results = results;
+        this.poster = poster;
+    }
+
+    /**
+     * Record a verdict and tag suspected files. Called on the scoring pipeline's threads.
+     */
+    @Override
+    public void verdictReady(AbstractFile file, String md5, Verdict verdict, long elapsedNanos) {
+        results.recordProcessed();  // Increment for every file scanned
+        boolean isSuspected = verdict.isSuspected();
+
+        if (isSuspected) {
+            TileScore topTile = verdict.getTopTile();
+            String path = getFilePathSafe(file);
+            results.recordSuspected(new SuspectedFile(file.getId(), path, md5, verdict.getScore(), detectionMethod.getDisplayName(),
+                    verdict.getStage().getDisplayName(), topTile == null ? null : topTile.toString(), elapsedNanos / 1000000));
+            sendIngestMessage(file, path); // Send detailed message if steganography is detected
+            long start = DetectionMetrics.now();
+            poster.post(file, verdict, detectionMethod); // Tag the file and queue its artifact for the blackboard
+            results.getMetrics().record(DetectionMetrics.Stage.BLACKBOARD, start);
+        }
+    }
+
+    /**
+     * Count a file that could not be scored and keep it for the report's list of failures.
+     */
+    @Override
+    public void scoringFailed(AbstractFile file, ScoringError error, int attempts) {
+        if (results.recordFailure(error)) {
+            results.listFailure(new DetectionJobResults.Failure(file.getId(), getFilePathSafe(file), error, attempts));
+        }
+    }
+
+    /**
+     * Count a file scored by an earlier job. It was tagged and messaged then, so only the
+     * job's counts and findings log are updated.
+     */
+    @Override
+    public void verdictRestored(AbstractFile file, String md5, Verdict verdict) {
+        results.recordProcessed();
+        results.recordRestored();
+        if (verdict.isSuspected()) {
+            results.recordSuspected(new SuspectedFile(file.getId(), getFilePathSafe(file), md5, verdict.getScore(),
+                    detectionMethod.getDisplayName(), verdict.getStage().getDisplayName(), null, 0));
+        }
+    }
+
+private void sendIngestMessage(AbstractFile file, String path) {
+    String title = "🚨 Steganography Detected! 🚨";
+    String detailMessage = "<html>"
+            + "<h2>Steganography Detection Notification</h2>"
+            + "<p><strong>File Information:</strong><br>"
+            + "- File Name: " + file.getName() + "<br>"
+            + "- Detected On: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + "<br>"
+            + "- File Location: " + path + "<br>"
+            + "- Detection Method: " + detectionMethod.getDisplayName() + "</p>"
+            + "<p><strong>Action Required:</strong><br>"
+            + "1. Verify the detection by reviewing the file.<br>"
+            + "2. Report this detection to your IT security team for further investigation.<br>"
+            + "3. Follow established security procedures related to steganography findings.</p>"
+            + "<p><strong>What is Steganography?</strong><br>"
+            + "Steganography involves embedding secret data within non-secret files. Detecting such files is crucial for preventing unauthorized information leaks.</p>"
+            + "<p><strong>Extra Steps?</strong><br>"
+            + "<p>Use an online tool to extract the payload, ZSteg for example.</p>"
+            + "</html>";
+
+    IngestServices.getInstance().postMessage(IngestMessage.createMessage(
+            IngestMessage.MessageType.INFO,  // You can use WARNING or ERROR if appropriate
+            "SteganographyDetection",
+            title,
+            detailMessage
+    ));
+}
+
+private String getFilePathSafe(AbstractFile file) {
+    try {
+        return file.getUniquePath();
+    } catch (TskCoreException e) {
+        logger.log(Level.SEVERE, "Could not get unique path for file " + file.getName(), e);
+        return "Unavailable";
+    }
+}
+}
@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * On-disk open addressing hash table of verdicts keyed by MD5 and model version, so only
+ * the pages that are looked up are ever read. An image scored by several models has a
+ * verdict for each. Slots are read and written with positional
+ * channel I/O rather than memory mapping so the file can be replaced when it grows.
+ */
+class VerdictStore {
+
+    private static final byte[] MAGIC = {'S', 'T', 'E', 'G', 'V', 'D', 'B', '2'};
+    private static final int HEADER_SIZE = 32;
+    // MD5 (16), model version key (8), flags (1), padding (7), score (8)
+    private static final int SLOT_SIZE = 40;
+    private static final int FLAGS = 24;
+    private static final int SCORE = 32;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD = 0.7;
+    private static final byte USED = 1;
+    private static final byte SUSPECTED = 2;
+
+    private final File file;
+    private FileChannel channel;
+    private int capacity;
+    private int count;
+    private final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+
+    VerdictStore(File file) throws IOException {
+        this.file = file;
+        file.getParentFile().mkdirs();
+        if (!file.exists() || !open(file)) {
+            create(file, INITIAL_CAPACITY);
+            open(file);
+        }
+    }
+
+    private boolean open(File storeFile) throws IOException {
+        channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        byte[] magic = new byte[MAGIC.length];
+        if (header.remaining() < HEADER_SIZE) {
+            channel.close();
+            return false;
+        }
+        header.get(magic);
+        capacity = header.getInt();
+        count = header.getInt();
+        if (!Arrays.equals(magic, MAGIC) || capacity <= 0 || channel.size() < HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            channel.close();
+            return false;  // Damaged or foreign file, start again
+        }
+        return true;
+    }
+
+    private static void create(File storeFile, int capacity) throws IOException {
+        try (FileChannel newChannel = FileChannel.open(storeFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putInt(capacity).putInt(0);
+            header.rewind();
+            newChannel.write(header, 0);
+            // Zero filled slots are empty
+            newChannel.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) capacity * SLOT_SIZE - 1);
+        }
+    }
+
+    /**
+     * The first 64 bits of the SHA-256 of a version string, which identify it in a slot.
+     */
+    static long versionKey(String version) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(version.getBytes(StandardCharsets.UTF_8))).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
+    synchronized Verdict get(byte[] md5, String modelVersion) throws IOException {
+        long position = find(md5, versionKey(modelVersion));
+        if (position < 0 || slot.get(FLAGS) == 0) {
+            return null;
+        }
+        return new Verdict((slot.get(FLAGS) & SUSPECTED) != 0, slot.getDouble(SCORE), modelVersion, DetectionStage.CACHE);
+    }
+
+    synchronized void put(byte[] md5, Verdict verdict) throws IOException {
+        if (count + 1 > capacity * MAX_LOAD) {
+            grow();
+        }
+        long versionKey = versionKey(verdict.getModelVersion());
+        long position = find(md5, versionKey);
+        boolean isNew = slot.get(FLAGS) == 0;
+        writeSlot(channel, position, md5, versionKey, flags(verdict), verdict.getScore());
+        if (isNew) {
+            count++;
+            writeCount();
+        }
+    }
+
+    synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Find the slot holding md5 and versionKey, or the empty slot where they belong, leaving
+     * its content in slot.
+     */
+    private long find(byte[] md5, long versionKey) throws IOException {
+        long hash = (ByteBuffer.wrap(md5).getLong() ^ versionKey) & Long.MAX_VALUE;
+        int index = (int) (hash % capacity);
+        for (int probe = 0; probe < capacity; probe++) {
+            long position = HEADER_SIZE + (long) index * SLOT_SIZE;
+            slot.clear();
+            channel.read(slot, position);
+            if (slot.get(FLAGS) == 0 || matches(md5, versionKey)) {
+                return position;
+            }
+            index = (index + 1) % capacity;
+        }
+        return -1;
+    }
+
+    private boolean matches(byte[] md5, long versionKey) {
+        for (int i = 0; i < md5.length; i++) {
+            if (slot.get(i) != md5[i]) {
+                return false;
+            }
+        }
+        return slot.getLong(16) == versionKey;
+    }
+
+    private static byte flags(Verdict verdict) {
+        return (byte) (USED | (verdict.isSuspected() ? SUSPECTED : 0));
+    }
+
+    private static void writeSlot(FileChannel target, long position, byte[] md5, long versionKey, byte flags, double score) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+        buffer.put(md5, 0, 16).putLong(versionKey).put(flags).put(new byte[7]).putDouble(score);
+        buffer.flip();
+        target.write(buffer, position);
+    }
+
+    private void writeCount() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(count).flip();
+        channel.write(buffer, MAGIC.length + 4);
+    }
+
+    /**
+     * Rehash every slot into a file twice the size, then swap it in.
+     */
+    private void grow() throws IOException {
+        File grown = new File(file.getPath() + ".new");
+        create(grown, capacity * 2);
+        VerdictStore target = new VerdictStore(grown);
+        ByteBuffer old = ByteBuffer.allocate(SLOT_SIZE);
+        byte[] md5 = new byte[16];
+        for (int index = 0; index < capacity; index++) {
+            old.clear();
+            channel.read(old, HEADER_SIZE + (long) index * SLOT_SIZE);
+            if (old.get(FLAGS) == 0) {
+                continue;
+            }
+            old.rewind();
+            old.get(md5);
+            long versionKey = old.getLong(16);
+            long position = target.find(md5, versionKey);
+            writeSlot(target.channel, position, md5, versionKey, old.get(FLAGS), old.getDouble(SCORE));
+            target.count++;
+        }
+        target.writeCount();
+        target.close();
+        channel.close();
+        Files.move(grown.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        open(file);
+    }
+}
@@ -26,44 +26,51 @@ import os
 import numpy as np
 import sys
 from PIL import Image
+import time
+from stegworker import serve, parse_batch_request, batch_response, result, OK, DECODE_FAILED, FEATURES_FAILED
 
-def open_image(image_path, size=(512, 512)):
+MODEL_VERSION = "LSB.py:chi-square-1"
+# The thresholds were tuned on 512x512 images, statistics are scaled to that pixel count
+REFERENCE_PIXELS = 512 * 512
+# Rows are converted to numpy a strip at a time so very large images don't need a full copy
+MAX_STRIP_PIXELS = 4 * 1024 * 1024
+
+def open_image(image):
     """
-    Open an image, resize it, and return as a numpy array.
+    Open an image (path or file object) read-only. Nothing is resized or written back.
     """
     try:
-        img = Image.open(image_path)
-        if img.size != size:
-            img = img.resize(size)
-        img.save(image_path, 'PNG')  # Save the processed image
-        return np.array(img)
+        return Image.open(image)
     except Exception as e:
-        print(f"Error opening or processing {image_path}: {e}")
+        print(f"Error opening {image}: {e}", file=sys.stderr)
         return None
 
-def chi_square_statistic(image_path, target_size=(512, 512)):
+def lsb_counts(img):
+    """
+    Count the pixels with the LSB set in each channel at native resolution, one strip of rows at a time.
+    Returns the per-channel counts and the number of pixels.
     """
-    Compute the chi-square statistic of the LSBs of an image (per channel for RGB/RGBA) to detect steganography.
+    channels = len(img.getbands())
+    width, height = img.size
+    ones = np.zeros(channels, dtype=np.int64)
+    rows = max(1, MAX_STRIP_PIXELS // max(1, width))
+    for top in range(0, height, rows):
+        strip = np.asarray(img.crop((0, top, width, min(height, top + rows))))
+        ones += np.count_nonzero(np.bitwise_and(strip.reshape(-1, channels), 1), axis=0)
+    return ones, width * height
+
+def chi_square_statistic(img):
+    """
+    Compute the chi-square statistic of the LSBs of an opened image (per channel for RGB/RGBA) to detect steganography.
     """
     try:
-        pixels = open_image(image_path, size=target_size)
-        if pixels is None:
-            return None
-        
-        if pixels.ndim == 2:  # Grayscale image
-            pixels = pixels.reshape((*pixels.shape, 1))  # Add channel dimension for uniform processing
-        
-        chi_square_stats = []
-        for channel in range(pixels.shape[2]):
-            lsb = np.bitwise_and(pixels[:,:,channel], 1)
-            hist, _ = np.histogram(lsb.flatten(), bins=2, range=(0, 2))
-            expected_freq = np.mean(hist)
-            chi_square_stat = np.sum((hist - expected_freq) ** 2 / expected_freq)
-            chi_square_stats.append(chi_square_stat)
-        
-        return chi_square_stats
+        ones, pixels = lsb_counts(img)
+        expected_freq = pixels / 2
+        zeros = pixels - ones
+        chi_square_stats = ((zeros - expected_freq) ** 2 + (ones - expected_freq) ** 2) / expected_freq
+        return list(chi_square_stats * (REFERENCE_PIXELS / pixels))
     except Exception as e:
-        print(f"Error processing {image_path}: {e}")
+        print(f"Error processing image: {e}", file=sys.stderr)
         return None
 
 def detect_lsb_steganography(chi_square_stats, is_grayscale):
@@ -74,6 +81,34 @@ def detect_lsb_steganography(chi_square_stats, is_grayscale):
     threshold = 10 if is_grayscale else 500
     return any(stat > threshold for stat in chi_square_stats)
 
+def classify(image):
+    """Return "Yes"/"No" and the largest chi-square statistic, or "Error" and None."""
+    img = open_image(image)
+    if img is None:
+        return "Error", None
+    chi_square_stats = chi_square_statistic(img)
+    if chi_square_stats is None:
+        return "Error", None
+    is_stego = detect_lsb_steganography(chi_square_stats, img.mode == 'L')
+    return ("Yes" if is_stego else "No"), float(max(chi_square_stats))
+
+def handle_request(request):
+    """Worker mode: the request holds a batch of file names and image bytes, the response has a result per image with the largest chi-square statistic as its score."""
+    results = []
+    for _, image in parse_batch_request(request):
+        img = open_image(image)
+        if img is None:
+            results.append(result(DECODE_FAILED))
+            continue
+        start = time.perf_counter()
+        chi_square_stats = chi_square_statistic(img)
+        if chi_square_stats is None:
+            results.append(result(FEATURES_FAILED))
+            continue
+        is_stego = detect_lsb_steganography(chi_square_stats, img.mode == 'L')
+        results.append(result(OK, is_stego, float(max(chi_square_stats)), time.perf_counter() - start))
+    return batch_response(results)
+
 def process_path(path):
     stego_count = 0
     total_images = 0
@@ -83,16 +118,11 @@ def process_path(path):
         total_images = len(files)
         
         for file in files:
-            img = Image.open(file)
-            convert_grayscale = img.mode == 'L'
-            chi_square_stats = chi_square_statistic(file)
-            if chi_square_stats is not None:
-                is_stego = detect_lsb_steganography(chi_square_stats, convert_grayscale)
-                if is_stego:
-                    stego_count += 1
-                    print(f"File: {file}, Detected LSB Steganography: Yes, Chi-square Statistic: {max(chi_square_stats)}")
-                else:
-                    print(f"File: {file}, Detected LSB Steganography: No, Chi-square Statistic: {max(chi_square_stats)}")
+            verdict, statistic = classify(file)
+            if verdict == "Yes":
+                stego_count += 1
+            if verdict != "Error":
+                print(f"File: {file}, Detected LSB Steganography: {verdict}, Chi-square Statistic: {statistic}")
         
         accuracy_percentage = (stego_count / total_images) * 100 if total_images > 0 else 0
         print(f"\nSteganography images found: {stego_count}")
@@ -100,19 +130,19 @@ def process_path(path):
         print(f"Accuracy percentage: {accuracy_percentage:.2f}%")
 
     elif os.path.isfile(path):
-        img = Image.open(path)
-        convert_grayscale = img.mode == 'L'
-        chi_square_stats = chi_square_statistic(path)
-        if chi_square_stats is not None:
-            is_stego = detect_lsb_steganography(chi_square_stats, convert_grayscale)
-            print(f"File: {path}, Detected LSB Steganography: {'Yes' if is_stego else 'No'}, Chi-square Statistic: {max(chi_square_stats)}")
+        verdict, statistic = classify(path)
+        if verdict != "Error":
+            print(f"File: {path}, Detected LSB Steganography: {verdict}, Chi-square Statistic: {statistic}")
     else:
         print("Invalid path.")
 
 if __name__ == "__main__":
     if len(sys.argv) != 2:
-        print("Usage: python script.py <path_to_image_or_folder>")
+        print("Usage: python script.py <path_to_image_or_folder> | --worker")
         sys.exit(1)
     
-    path = sys.argv[1]
-    process_path(path)
\ No newline at end of file
+    if sys.argv[1] == '--worker':
+        # Long-lived worker for the ingest module, see ScoringWorkerPool.java
+        serve(handle_request, MODEL_VERSION)
+    else:
+        process_path(sys.argv[1])
@@ -25,114 +25,97 @@ SOFTWARE.
 import os
 import sys
 import numpy as np
-import requests
 from PIL import Image
 import rawpy
 from joblib import load as joblib_load
 import logging
+import time
+from stegworker import serve, refuse, parse_batch_request, batch_response, result, OK, DECODE_FAILED, FEATURES_FAILED, MODEL_FAILED
+from spam_features import spam_extract_2
+from tiled_spam import open_gray, extract_tiled_gray, TILED_VERSION
+from export_model import model_version
 
-# Setup basic logging
-log_directory = os.path.join(os.environ.get('APPDATA'), 'SteganographyDetection')
-os.makedirs(log_directory, exist_ok=True)  # Ensure the directory exists even if it already exists
-log_file_path = os.path.join(log_directory, 'application.log')
-logging.basicConfig(filename=log_file_path, level=logging.INFO, format='%(asctime)s:%(levelname)s:%(message)s')
+# Workers' stderr goes to the case log, see ScoringWorkerPool.java
+logging.basicConfig(stream=sys.stderr, level=logging.INFO, format='%(asctime)s:%(levelname)s:%(message)s')
 
-def download_file(url, destination):
-    """Download a file from a web URL to a local destination."""
-    try:
-        response = requests.get(url)
-        response.raise_for_status()  # Raises an HTTPError for bad responses
-        with open(destination, 'wb') as f:
-            f.write(response.content)
-        logging.info(f"Downloaded file from {url} to {destination}")
-    except requests.RequestException as e:
-        logging.error(f"Failed to download file from {url}: {str(e)}")
-        sys.exit(1)
-
-def setup_application():
-    """Set up application by ensuring all necessary files are present."""
-    # Set the URLs to the direct download links of the raw files on GitHub
-    model_url = 'https://github.com/AndrewBaxter123/FYP/raw/main/src/org/andrewbaxter/SteganographyDetection/models/SVC_model.pkl'
-    scaler_url = 'https://github.com/AndrewBaxter123/FYP/raw/main/src/org/andrewbaxter/SteganographyDetection/models/scaler.joblib'
-    local_app_data = os.environ.get('LOCALAPPDATA', os.path.join(os.environ.get('USERPROFILE'), 'AppData', 'Local'))
-    model_dir = os.path.join(local_app_data, 'models')
+MODEL_FILE = 'SVC_model.pkl'
+SCALER_FILE = 'scaler.joblib'
 
-    if not os.path.exists(model_dir):
-        os.makedirs(model_dir)
-        logging.info(f"Created directory at {model_dir}")
+model = None
+scaler = None
+model_path = None
 
-    model_path = os.path.join(model_dir, 'SVC_model.pkl')
-    scaler_path = os.path.join(model_dir, 'scaler.joblib')
 
-    # Download model and scaler files if they don't exist locally
-    if not os.path.exists(model_path):
-        download_file(model_url, model_path)
-    if not os.path.exists(scaler_path):
-        download_file(scaler_url, scaler_path)
+class ModelLoadError(Exception):
+    pass
 
-    return model_path, scaler_path
 
+def model_directory():
+    """The extracted models the ingest module passes in, or the models directory of the source tree."""
+    return os.environ.get('STEG_MODEL_DIR') or os.path.join(os.path.dirname(os.path.abspath(__file__)), '..', 'models')
 
-model_path, scaler_path = setup_application()
 
-try:
-    model = joblib_load(model_path)
-    scaler = joblib_load(scaler_path)
-except Exception as e:
-    logging.error(f"Failed to load model or scaler: {e}")
-    sys.exit(1)
+def load_models(directory=None):
+    """
+    Load the SVC and the scaler. Their arrays are memory-mapped read-only, so every worker
+    on the machine shares the pages of the one extracted copy.
+    """
+    global model, scaler, model_path
+    directory = directory or model_directory()
+    path = os.path.join(directory, MODEL_FILE)
+    try:
+        model = joblib_load(path, mmap_mode='r')
+        scaler = joblib_load(os.path.join(directory, SCALER_FILE), mmap_mode='r')
+    except Exception as e:
+        raise ModelLoadError(f"Failed to load the model from {directory}: {e}") from e
+    model_path = path
 
-def process_dng(image_path):
+def process_dng(image, name):
     try:
-        with rawpy.imread(image_path) as raw:
+        with rawpy.imread(image) as raw:
             rgb = raw.postprocess()
         return Image.fromarray(rgb)
     except Exception as e:
-        logging.error(f"Error processing DNG {image_path}: {e}")
+        logging.error(f"Error processing DNG {name}: {e}")
         return None
 
-def spam_extract_2(X, T):
-    """Extract features using a spam method."""
-    def getM3(L, C, R, T):
-        L = np.clip(L, -T, T)
-        C = np.clip(C, -T, T)
-        R = np.clip(R, -T, T)
-        M = np.zeros((2*T+1, 2*T+1, 2*T+1))
-        for i in range(-T, T+1):
-            for j in range(-T, T+1):
-                for k in range(-T, T+1):
-                    M[i+T, j+T, k+T] = np.sum((L == i) & (C == j) & (R == k))
-        return M.flatten() / np.sum(M)
-    
-    D1, D2, D3, D4 = X[:, :-1] - X[:, 1:], X[:-1, :] - X[1:, :], X[:-1, :-1] - X[1:, 1:], X[1:, :-1] - X[:-1, 1:]
-    features = [getM3(D[:-2].flatten(), D[1:-1].flatten(), D[2:].flatten(), T) for D in [D1, D2, D3, D4]]
-    return np.mean(features, axis=0)
-
-def preprocess_and_extract_features(image_path, T=3):
-    """Preprocess and extract features from an image."""
+def decode_image(image, name):
+    """
+    Decode and resize an image the way the model was trained. The image is a path or a file
+    object, its name decides how it is decoded. Raises an exception if it can't be decoded.
+    """
+    if name.lower().endswith('.dng'):
+        img = process_dng(image, name)
+        if img is None:
+            raise ValueError(f"{name} is not a readable DNG")
+    else:
+        img = Image.open(image).convert('L')
+    img_resized = img.resize((512, 512), Image.LANCZOS)
+    return np.array(img_resized).astype(np.float32)
+
+def preprocess_and_extract_features(image, T=3, name=None):
+    """
+    Preprocess and extract features from an image, or return None if either fails.
+    The image is a path or a file object, name defaults to the path and decides how it is decoded.
+    """
+    name = name if name is not None else image
     try:
-        if image_path.lower().endswith('.dng'):
-            img = process_dng(image_path)
-        else:
-            img = Image.open(image_path).convert('L')
-        
-        img_resized = img.resize((512, 512), Image.LANCZOS)
-        img_array = np.array(img_resized).astype(np.float32)
-        features = spam_extract_2(img_array, T)
-        logging.info("Features extracted successfully.")
+        features = spam_extract_2(decode_image(image, name), T)
+        logging.debug("Features extracted successfully.")
         return features
     except Exception as e:
-        logging.error(f"Error in preprocessing {image_path}: {e}")
+        logging.error(f"Error in preprocessing {name}: {e}")
         return None
 
-def predict_image(image_path):
-    """Predict if an image contains steganography."""
+def predict_image(image, name=None):
+    """Predict if an image contains steganography, returning the prediction and the SVC decision value."""
     try:
-        features = preprocess_and_extract_features(image_path)
+        features = preprocess_and_extract_features(image, name=name)
         if features is not None:
             features_scaled = scaler.transform(features.reshape(1, -1))
             prediction = model.predict(features_scaled)
-            return prediction[0]
+            decision = model.decision_function(features_scaled)
+            return prediction[0], float(decision[0])
         else:
             logging.error("Features could not be extracted.")
             return "Error"
@@ -140,16 +123,111 @@ def predict_image(image_path):
         logging.error(f"Error during prediction: {e}")
         return "Error"
 
+def classify(image, name=None):
+    """Return "Yes", "No" or "Error" and the SVC decision value (None on error) for a single image path or file object."""
+    result = predict_image(image, name)
+    if result == "Error":
+        logging.error("ERROR: Could not process image.")
+        return "Error", None
+    prediction, decision = result
+    verdict = "Yes" if prediction == 1 else "No"
+    logging.debug(f"Steganography Detected: {verdict}")
+    return verdict, decision
+
+def classify_tiled(image, name):
+    """
+    Score the whole-image features of the native-resolution tiles, and each tile on its own.
+    Returns the image's result() with a score per tile.
+    """
+    try:
+        img = open_gray(image, name)
+    except Exception as e:
+        logging.warning(f"Could not decode {name}: {e}")
+        return result(DECODE_FAILED)
+    start = time.perf_counter()
+    try:
+        features, tiles = extract_tiled_gray(img, name)
+    except Exception as e:
+        logging.warning(f"Could not extract the tile features of {name}: {e}")
+        return result(FEATURES_FAILED)
+    feature_seconds = time.perf_counter() - start
+    try:
+        scaled = scaler.transform(np.vstack([features] + [tile[4] for tile in tiles]))
+        predictions = model.predict(scaled[:1])
+        decisions = model.decision_function(scaled)
+    except Exception as e:
+        logging.error(f"Error scoring tiles of {name}: {e}")
+        return result(MODEL_FAILED, feature_seconds=feature_seconds)
+    tile_scores = [(x, y, w, h, float(d)) for (x, y, w, h, _), d in zip(tiles, decisions[1:])]
+    return result(OK, predictions[0] == 1, float(decisions[0]), feature_seconds, tile_scores)
+
+def handle_tiled_request(request):
+    """Worker mode with --tiled: one classify_tiled() result per image of the batch."""
+    return batch_response([classify_tiled(image, name) for name, image in parse_batch_request(request)])
+
+def handle_request(request):
+    """
+    Worker mode: the request holds a batch of file names and image bytes, the response has a
+    result() per image with the SVC decision value as its score. Features of the whole batch
+    are stacked so the scaler and the SVC run once per batch.
+    """
+    images = parse_batch_request(request)
+    results = [None] * len(images)
+    rows = []
+    features = []
+    feature_seconds = []
+    for row, (name, image) in enumerate(images):
+        try:
+            pixels = decode_image(image, name)
+        except Exception as e:
+            logging.warning(f"Could not decode {name}: {e}")
+            results[row] = result(DECODE_FAILED)
+            continue
+        start = time.perf_counter()
+        try:
+            image_features = spam_extract_2(pixels, 3)
+        except Exception as e:
+            logging.warning(f"Could not extract the features of {name}: {e}")
+            results[row] = result(FEATURES_FAILED)
+            continue
+        rows.append(row)
+        features.append(image_features)
+        feature_seconds.append(time.perf_counter() - start)
+
+    if features:
+        try:
+            features_scaled = scaler.transform(np.vstack(features))
+            predictions = model.predict(features_scaled)
+            decisions = model.decision_function(features_scaled)
+            for row, prediction, decision, seconds in zip(rows, predictions, decisions, feature_seconds):
+                results[row] = result(OK, prediction == 1, float(decision), seconds)
+        except Exception as e:
+            logging.error(f"Error during batch prediction: {e}")
+            for row, seconds in zip(rows, feature_seconds):
+                results[row] = result(MODEL_FAILED, feature_seconds=seconds)
+    return batch_response(results)
+
 if __name__ == "__main__":
-    if len(sys.argv) != 2:
-        logging.error("ERROR: Incorrect usage, expected a single image path as argument.")
+    if len(sys.argv) not in (2, 3) or (len(sys.argv) == 3 and sys.argv[2] != '--tiled'):
+        logging.error("ERROR: Incorrect usage, expected a single image path or --worker [--tiled] as arguments.")
         sys.exit(1)
 
-    image_path = sys.argv[1]
-    prediction = predict_image(image_path)
-    if prediction == "Error":
-        logging.error("ERROR: Could not process image.")
+    try:
+        load_models()
+    except ModelLoadError as e:
+        logging.error(str(e))
+        if sys.argv[1] == '--worker':
+            refuse(str(e))  # Reported as the ingest error instead of a worker that never answers
+        sys.exit(1)
+
+    if sys.argv[1] == '--worker':
+        # Long-lived worker, the model and scaler above are loaded once for every batch sent to it
+        if len(sys.argv) == 3:
+            # Tiled verdicts differ from resized ones, so they are cached under their own version
+            serve(handle_tiled_request, f"{model_version(model_path)}:{TILED_VERSION}")
+        else:
+            serve(handle_request, model_version(model_path))
     else:
-        result = "Yes" if prediction == 1 else "No"
-        logging.info(f"Steganography Detected: {result}")
-        print(f"Steganography Detected: {result}")
+        result, _ = classify(sys.argv[1])
+        if result != "Error":
+            print(f"Steganography Detected: {result}")
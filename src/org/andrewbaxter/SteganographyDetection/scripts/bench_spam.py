@@ -0,0 +1,90 @@
+"""
+MIT License
+
+Copyright (c) 2024 Andrew Baxter
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+"""
+
+# Microbenchmark and regression check for spam_features.spam_extract_2.
+#
+#     python bench_spam.py [--runs N]
+#
+# Times the single-pass bincount histogram against the original 343-pass implementation
+# and exits non-zero unless both produce bit-identical feature vectors.
+
+import argparse
+import sys
+import timeit
+
+import numpy as np
+
+from spam_features import spam_extract_2
+
+
+def spam_extract_2_reference(X, T):
+    """The original implementation from autopsySVC.py, kept as the reference output."""
+    def getM3(L, C, R, T):
+        L = np.clip(L, -T, T)
+        C = np.clip(C, -T, T)
+        R = np.clip(R, -T, T)
+        M = np.zeros((2*T+1, 2*T+1, 2*T+1))
+        for i in range(-T, T+1):
+            for j in range(-T, T+1):
+                for k in range(-T, T+1):
+                    M[i+T, j+T, k+T] = np.sum((L == i) & (C == j) & (R == k))
+        return M.flatten() / np.sum(M)
+
+    D1, D2, D3, D4 = X[:, :-1] - X[:, 1:], X[:-1, :] - X[1:, :], X[:-1, :-1] - X[1:, 1:], X[1:, :-1] - X[:-1, 1:]
+    features = [getM3(D[:-2].flatten(), D[1:-1].flatten(), D[2:].flatten(), T) for D in [D1, D2, D3, D4]]
+    return np.mean(features, axis=0)
+
+
+def sample_images():
+    """512x512 inputs like preprocess_and_extract_features produces: smooth, noisy, flat and RGB (DNG path)."""
+    rng = np.random.default_rng(0)
+    gradient = np.add.outer(np.arange(512), np.arange(512)) % 256
+    return {
+        'smooth': gradient.astype(np.float32),
+        'noisy': rng.integers(0, 256, (512, 512)).astype(np.float32),
+        'lsb': (gradient ^ rng.integers(0, 2, (512, 512))).astype(np.float32),
+        'flat': np.full((512, 512), 128, dtype=np.float32),
+        'rgb': rng.integers(0, 256, (512, 512, 3)).astype(np.float32),
+    }
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser(description="Benchmark and check spam_extract_2 against the original implementation.")
+    parser.add_argument('--runs', type=int, default=5)
+    args = parser.parse_args()
+
+    failures = 0
+    for name, X in sample_images().items():
+        expected = spam_extract_2_reference(X, 3)
+        actual = spam_extract_2(X, 3)
+        identical = expected.dtype == actual.dtype and np.array_equal(expected, actual)
+        if not identical:
+            failures += 1
+
+        reference_time = timeit.timeit(lambda: spam_extract_2_reference(X, 3), number=args.runs) / args.runs
+        single_pass_time = timeit.timeit(lambda: spam_extract_2(X, 3), number=args.runs) / args.runs
+        print(f"{name:>6}: reference {reference_time * 1000:8.1f} ms, single pass {single_pass_time * 1000:6.1f} ms, "
+              f"speedup {reference_time / single_pass_time:5.1f}x, identical: {'yes' if identical else 'NO'}")
+
+    sys.exit(1 if failures else 0)
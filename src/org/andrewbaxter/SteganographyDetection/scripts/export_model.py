@@ -0,0 +1,95 @@
+"""
+MIT License
+
+Copyright (c) 2024 Andrew Baxter
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+"""
+
+import argparse
+import hashlib
+import struct
+import sys
+
+import numpy as np
+from joblib import load as joblib_load
+
+# Read by SvcModel.java, every value is big-endian so DataInputStream can read it directly
+MAGIC = b'STEGSVC1'
+FEATURE_COUNT = 343
+
+
+def write_utf(f, text):
+    data = text.encode('utf-8')
+    f.write(struct.pack('>H', len(data)))
+    f.write(data)
+
+
+def write_doubles(f, values):
+    values = np.asarray(values, dtype='>f8').ravel()
+    f.write(values.tobytes())
+
+
+def model_version(model_path):
+    """Identify the model by the name and content hash of the pickle it came from."""
+    with open(model_path, 'rb') as f:
+        digest = hashlib.sha256(f.read()).hexdigest()
+    return f"SVC_model.pkl:{digest[:12]}"
+
+
+def export(model_path, scaler_path, output_path):
+    model = joblib_load(model_path)
+    scaler = joblib_load(scaler_path)
+
+    if len(model.classes_) != 2:
+        sys.exit(f"Only binary SVC models can be exported, found classes {model.classes_}")
+    if model.kernel not in ('rbf', 'linear', 'poly', 'sigmoid'):
+        sys.exit(f"Unsupported kernel {model.kernel}")
+
+    mean = scaler.mean_ if scaler.mean_ is not None else np.zeros(FEATURE_COUNT)
+    scale = scaler.scale_ if scaler.scale_ is not None else np.ones(FEATURE_COUNT)
+    support_vectors = np.asarray(model.support_vectors_, dtype=np.float64)
+    if support_vectors.shape[1] != FEATURE_COUNT or len(mean) != FEATURE_COUNT:
+        sys.exit(f"Expected {FEATURE_COUNT} SPAM features, found {support_vectors.shape[1]}")
+
+    with open(output_path, 'wb') as f:
+        f.write(MAGIC)
+        write_utf(f, model_version(model_path))
+        write_utf(f, model.kernel)
+        # _gamma holds the value 'scale'/'auto' resolved to when the model was fitted
+        f.write(struct.pack('>ddi', float(model._gamma), float(model.coef0), int(model.degree)))
+        f.write(struct.pack('>i', FEATURE_COUNT))
+        write_doubles(f, mean)
+        write_doubles(f, scale)
+        f.write(struct.pack('>ii', int(model.classes_[0]), int(model.classes_[1])))
+        f.write(struct.pack('>i', len(support_vectors)))
+        write_doubles(f, model.dual_coef_[0])
+        write_doubles(f, model.intercept_[:1])
+        write_doubles(f, support_vectors)
+
+    print(f"Exported {len(support_vectors)} support vectors to {output_path}")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser(description="Export SVC_model.pkl and scaler.joblib for the in-JVM engine (SvcModel.java).")
+    parser.add_argument('--model', required=True, help="path to SVC_model.pkl")
+    parser.add_argument('--scaler', required=True, help="path to scaler.joblib")
+    parser.add_argument('--out', default='../models/SVC_model.bin', help="exported model file")
+    args = parser.parse_args()
+    export(args.model, args.scaler, args.out)
@@ -0,0 +1,76 @@
+"""
+MIT License
+
+Copyright (c) 2024 Andrew Baxter
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+"""
+
+# Write models/manifest.properties for the model files bundled with the module.
+#
+#     python package_models.py [--models ../models]
+#
+# The fetch-models target in build.xml runs it on every build; run it by hand after replacing
+# a model file. ModelStore.java extracts the files listed here and refuses any whose SHA-256
+# differs. The version is derived from the checksums, so new models are extracted to a new
+# directory instead of over files that running workers have mapped. Save models with
+# joblib.dump and no compression, otherwise the workers can't memory-map them.
+
+import argparse
+import hashlib
+import os
+import sys
+
+MODEL_FILES = ('SVC_model.pkl', 'scaler.joblib')
+MANIFEST = 'manifest.properties'
+
+
+def sha256(path):
+    digest = hashlib.sha256()
+    with open(path, 'rb') as f:
+        for block in iter(lambda: f.read(1 << 20), b''):
+            digest.update(block)
+    return digest.hexdigest()
+
+
+def write_manifest(models_dir):
+    checksums = {name: sha256(os.path.join(models_dir, name))
+                 for name in MODEL_FILES if os.path.isfile(os.path.join(models_dir, name))}
+    missing = [name for name in MODEL_FILES if name not in checksums]
+    version = hashlib.sha256(''.join(checksums[name] for name in sorted(checksums)).encode('ascii')).hexdigest()[:12]
+    with open(os.path.join(models_dir, MANIFEST), 'w', newline='\n') as f:
+        f.write("# Model files bundled for the Python workers, written by scripts/package_models.py\n")
+        f.write(f"version={version}\n")
+        for name in sorted(checksums):
+            f.write(f"sha256.{name}={checksums[name]}\n")
+    return version, checksums, missing
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser(description="Write the manifest of the bundled model files.")
+    parser.add_argument('--models', default=os.path.join(os.path.dirname(os.path.abspath(__file__)), '..', 'models'),
+                        help="directory holding the model files")
+    args = parser.parse_args()
+    version, checksums, missing = write_manifest(args.models)
+    for name, checksum in sorted(checksums.items()):
+        print(f"{name} {checksum}")
+    print(f"Models version {version}")
+    if missing:
+        print(f"Not bundled, methods that need them will refuse to start: {', '.join(missing)}", file=sys.stderr)
+        sys.exit(1)
@@ -0,0 +1,124 @@
+"""
+MIT License
+
+Copyright (c) 2024 Andrew Baxter
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+"""
+
+# Check that the in-JVM engine (SvcModel.java) makes the same decisions as autopsySVC.py.
+#
+#     python parity_check.py [corpus_dir] --classpath <benchmark/build/classes> [--model-bin ../models/SVC_model.bin]
+#
+# The Java side is benchmark/src/.../SvcParityCheck.java, compiled with the module sources by
+# "ant compile" in benchmark/. The corpus defaults to benchmark/parity, PNG and JPEG fixtures
+# written by ParityFixtures.java.
+#
+# Every image in the corpus is scored by both. PNG decodes to the same pixels in Pillow and
+# ImageIO, so their decision values must agree to within --png-tolerance, which only allows
+# for floating-point rounding. ImageIO's JPEG decoder differs from libjpeg by a grey level on
+# some pixels, so JPEG decision values may differ by up to --jpeg-tolerance, and verdicts may
+# differ only for images whose decision value is within that tolerance of the boundary.
+# Images outside the tolerance are listed and the exit code is non-zero if there are any.
+
+import argparse
+import os
+import subprocess
+import sys
+
+IMAGE_EXTENSIONS = ('.png', '.jpg', '.jpeg', '.pgm', '.bmp', '.gif')
+JPEG_EXTENSIONS = ('.jpg', '.jpeg')
+DEFAULT_CORPUS = os.path.join(os.path.dirname(os.path.abspath(__file__)), '..', '..', '..', '..', '..', 'benchmark', 'parity')
+DEFAULT_MODEL_BIN = os.path.join(os.path.dirname(os.path.abspath(__file__)), '..', 'models', 'SVC_model.bin')
+PNG_TOLERANCE = 1e-6
+JPEG_TOLERANCE = 0.05
+
+
+def python_decisions(images):
+    import autopsySVC
+    autopsySVC.load_models()  # The same way the ingest workers do, from STEG_MODEL_DIR or ../models
+    decisions = {}
+    for image in images:
+        features = autopsySVC.preprocess_and_extract_features(image)
+        if features is None:
+            decisions[image] = (None, "Error")
+            continue
+        scaled = autopsySVC.scaler.transform(features.reshape(1, -1))
+        decision = float(autopsySVC.model.decision_function(scaled)[0])
+        verdict = "Yes" if autopsySVC.model.predict(scaled)[0] == 1 else "No"
+        decisions[image] = (decision, verdict)
+    return decisions
+
+
+def java_decisions(images, model_bin, classpath):
+    output = subprocess.run(
+        ['java', '-cp', classpath, 'org.andrewbaxter.SteganographyDetection.SvcParityCheck', model_bin] + images,
+        check=True, capture_output=True, text=True).stdout
+    decisions = {}
+    for line in output.splitlines():
+        path, decision, verdict = line.rsplit(',', 2)
+        decisions[path] = (float(decision) if decision else None, verdict)
+    return decisions
+
+
+def within_tolerance(expected, actual, tolerance):
+    python_decision, python_verdict = expected
+    java_decision, java_verdict = actual
+    if python_decision is None or java_decision is None:
+        return python_verdict == java_verdict  # Both must fail to decode
+    if abs(python_decision - java_decision) > tolerance:
+        return False
+    return python_verdict == java_verdict or abs(python_decision) <= tolerance
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser(description="Compare SvcModel.java with autopsySVC.py on PNG and JPEG images.")
+    parser.add_argument('corpus', nargs='?', default=DEFAULT_CORPUS)
+    parser.add_argument('--model-bin', default=DEFAULT_MODEL_BIN)
+    parser.add_argument('--classpath', required=True)
+    parser.add_argument('--png-tolerance', type=float, default=PNG_TOLERANCE,
+                        help="largest difference in decision value allowed for lossless images")
+    parser.add_argument('--jpeg-tolerance', type=float, default=JPEG_TOLERANCE,
+                        help="largest difference in decision value allowed for JPEG images")
+    args = parser.parse_args()
+    if not os.path.isfile(args.model_bin):
+        sys.exit(f"{args.model_bin} is missing, build the module with 'ant fetch-models' first")
+
+    images = sorted(os.path.join(args.corpus, f) for f in os.listdir(args.corpus) if f.lower().endswith(IMAGE_EXTENSIONS))
+    expected = python_decisions(images)
+    actual = java_decisions(images, args.model_bin, args.classpath)
+
+    failures = 0
+    largest = {'PNG and other lossless': 0.0, 'JPEG': 0.0}
+    for image in images:
+        jpeg = image.lower().endswith(JPEG_EXTENSIONS)
+        tolerance = args.jpeg_tolerance if jpeg else args.png_tolerance
+        python_decision, python_verdict = expected[image]
+        java_decision, java_verdict = actual.get(image, (None, "Missing"))
+        if python_decision is not None and java_decision is not None:
+            kind = 'JPEG' if jpeg else 'PNG and other lossless'
+            largest[kind] = max(largest[kind], abs(python_decision - java_decision))
+        if not within_tolerance(expected[image], (java_decision, java_verdict), tolerance):
+            failures += 1
+            print(f"MISMATCH {image}: python={python_verdict} ({python_decision}) java={java_verdict} ({java_decision}), tolerance {tolerance}")
+
+    for kind, difference in largest.items():
+        print(f"Largest decision difference, {kind}: {difference:.3g}")
+    print(f"{len(images) - failures}/{len(images)} images within tolerance")
+    sys.exit(1 if failures else 0)
@@ -0,0 +1,54 @@
+"""
+MIT License
+
+Copyright (c) 2024 Andrew Baxter
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+"""
+
+import numpy as np
+
+
+def spam_counts(X, T):
+    """
+    Raw SPAM co-occurrence counts of X, one row of (2T+1)^3 counts per difference direction.
+    Counts of separate regions of an image can be added up before normalizing.
+    """
+    bins = 2 * T + 1
+
+    def getM3(D):
+        # D is clipped to [-T, T]. Each (L, C, R) triple is three consecutive rows of D,
+        # so the co-occurrence histogram is a single bincount over the combined bin index.
+        D = D.astype(np.intp) + T
+        index = (D[:-2] * bins + D[1:-1]) * bins + D[2:]
+        return np.bincount(index.ravel(), minlength=bins ** 3)
+
+    D1, D2, D3, D4 = X[:, :-1] - X[:, 1:], X[:-1, :] - X[1:, :], X[:-1, :-1] - X[1:, 1:], X[1:, :-1] - X[:-1, 1:]
+    return np.stack([getM3(np.clip(D, -T, T)) for D in [D1, D2, D3, D4]])
+
+
+def spam_normalize(counts):
+    """Turn spam_counts() output into the feature vector: the mean of the normalized histograms."""
+    features = [M.astype(np.float64) / np.sum(M) for M in counts]
+    return np.mean(features, axis=0)
+
+
+def spam_extract_2(X, T):
+    """Extract features using a spam method."""
+    return spam_normalize(spam_counts(X, T))
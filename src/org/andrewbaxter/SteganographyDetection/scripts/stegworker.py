@@ -0,0 +1,131 @@
+"""
+MIT License
+
+Copyright (c) 2024 Andrew Baxter
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+"""
+
+import io
+import os
+import struct
+import sys
+
+# Every frame is a 4-byte big-endian payload length followed by the payload.
+HEADER = struct.Struct('>I')
+COUNT = struct.Struct('>H')
+NAME_LENGTH = struct.Struct('>H')
+READY = b'READY'
+FAILED = b'FAILED'
+
+# Result of one image of a batch: status, suspected flag, score (NaN if none), feature
+# extraction time in microseconds and tile count, then x, y, width, height and score per tile.
+# Parsed by ScoringWorkerPool.parseResults.
+RESULT = struct.Struct('>BBdIH')
+TILE = struct.Struct('>iiiid')
+
+# Status codes, ScoringError.java has the same wire codes
+OK = 0
+DECODE_FAILED = 1
+FEATURES_FAILED = 2
+MODEL_FAILED = 3
+
+
+def read_exactly(stream, size):
+    """Read exactly size bytes, or return None if the stream ends first."""
+    chunks = []
+    remaining = size
+    while remaining > 0:
+        chunk = stream.read(remaining)
+        if not chunk:
+            return None
+        chunks.append(chunk)
+        remaining -= len(chunk)
+    return b''.join(chunks)
+
+
+def read_frame(stream):
+    """Read one frame, returning None once the Java side closes the pipe."""
+    header = read_exactly(stream, HEADER.size)
+    if header is None:
+        return None
+    (length,) = HEADER.unpack(header)
+    return read_exactly(stream, length)
+
+
+def parse_batch_request(request):
+    """
+    A batch request is a 2-byte image count, then per image a 2-byte name length,
+    the UTF-8 file name, a 4-byte image length and the image bytes.
+    Returns a list of names and in-memory file objects for the images.
+    """
+    (count,) = COUNT.unpack_from(request)
+    offset = COUNT.size
+    images = []
+    for _ in range(count):
+        (name_length,) = NAME_LENGTH.unpack_from(request, offset)
+        offset += NAME_LENGTH.size
+        name = request[offset:offset + name_length].decode('utf-8')
+        offset += name_length
+        (image_length,) = HEADER.unpack_from(request, offset)
+        offset += HEADER.size
+        images.append((name, io.BytesIO(request[offset:offset + image_length])))
+        offset += image_length
+    return images
+
+
+def result(status, suspected=False, score=float('nan'), feature_seconds=0.0, tiles=()):
+    """Pack the result of one image, tiles being (x, y, width, height, score) tuples."""
+    tiles = tiles[:0xFFFF]
+    micros = min(int(feature_seconds * 1e6), 0xFFFFFFFF)
+    return RESULT.pack(status, 1 if suspected else 0, score, micros, len(tiles)) + b''.join(TILE.pack(*tile) for tile in tiles)
+
+
+def batch_response(results):
+    """The response to a batch is the result() of each image, in request order."""
+    return b''.join(results)
+
+
+def write_frame(stream, payload):
+    stream.write(HEADER.pack(len(payload)) + payload)
+    stream.flush()
+
+
+def refuse(reason):
+    """Tell the Java side why the worker can't start, in place of the READY frame."""
+    write_frame(sys.stdout.buffer, FAILED + b' ' + reason.encode('utf-8'))
+
+
+def serve(handler, model_version):
+    """
+    Answer framed requests from stdin until it is closed.
+    The first frame sent is "READY <model version>".
+    The handler takes the request payload (bytes) and returns the response payload (bytes).
+    """
+    # Keep the real stdout for frames only, anything else printed goes to stderr
+    frames_out = os.fdopen(os.dup(sys.stdout.fileno()), 'wb')
+    os.dup2(sys.stderr.fileno(), sys.stdout.fileno())
+    frames_in = sys.stdin.buffer
+
+    write_frame(frames_out, READY + b' ' + model_version.encode('utf-8'))
+    while True:
+        request = read_frame(frames_in)
+        if request is None:
+            break
+        write_frame(frames_out, handler(request))
@@ -0,0 +1,95 @@
+"""
+MIT License
+
+Copyright (c) 2024 Andrew Baxter
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+"""
+
+# SPAM features over fixed-size tiles at native resolution, for large photos and RAW files
+# where resizing to 512x512 is slow and smooths away the LSB noise the features rely on.
+
+import os
+from concurrent.futures import ThreadPoolExecutor
+import numpy as np
+from PIL import Image
+import rawpy
+from spam_features import spam_counts, spam_normalize
+
+TILE_SIZE = 512
+# Identifies the tile features in the model version of tiled verdicts
+TILED_VERSION = f"tiled-{TILE_SIZE}-2"
+# Each Java-side worker already runs in its own process, so keep the threads per worker modest
+TILE_THREADS = max(1, min(4, os.cpu_count() or 1))
+
+
+def open_gray(image, name):
+    """
+    Decode an image (path or file object) at native resolution for extract_tiled_gray, which
+    converts it to 8-bit grayscale one band at a time, so there is never a grayscale copy of
+    the whole image next to the decoded one. Colour JPEGs are decoded straight to their luma
+    channel and never exist as RGB. Pillow decodes other formats whole, in their own mode.
+    DNGs are demosaiced at half size, which only averages each 2x2 Bayer block
+    instead of running the full interpolation.
+    """
+    if name.lower().endswith('.dng'):
+        with rawpy.imread(image) as raw:
+            rgb = raw.postprocess(half_size=True, use_camera_wb=True, no_auto_bright=True, output_bps=8)
+        return Image.fromarray(rgb).convert('L')
+    img = Image.open(image)
+    if img.format == 'JPEG':
+        img.draft('L', img.size)  # Same size, so only the colour conversion is skipped
+    img.load()  # Decoding errors surface here rather than in the feature extraction
+    return img
+
+
+def _tile_counts(band, x, T):
+    tile = band[:, x:x + TILE_SIZE]
+    return spam_counts(tile, T)
+
+
+def extract_tiled(image, name, T=3):
+    """
+    Return the whole-image feature vector and a list of (x, y, width, height, features) per tile.
+    Tiles smaller than 16 pixels on a side at the right and bottom edges are left out.
+    The image is converted to numpy one band of tiles at a time and the tiles of a band are
+    processed in parallel; their counts are added to the running whole-image total as they finish.
+    Co-occurrences that straddle tile boundaries are not counted.
+    """
+    return extract_tiled_gray(open_gray(image, name), name, T)
+
+
+def extract_tiled_gray(img, name, T=3):
+    """extract_tiled for an image already opened with open_gray."""
+    width, height = img.size
+    total = None
+    tiles = []
+    with ThreadPoolExecutor(max_workers=TILE_THREADS) as executor:
+        for y in range(0, height, TILE_SIZE):
+            band_height = min(TILE_SIZE, height - y)
+            if band_height < 16:
+                break
+            band = np.asarray(img.crop((0, y, width, y + band_height)).convert('L'), dtype=np.int16)
+            xs = [x for x in range(0, width, TILE_SIZE) if width - x >= 16]
+            for x, counts in zip(xs, executor.map(lambda x: _tile_counts(band, x, T), xs)):
+                total = counts if total is None else total + counts
+                tiles.append((x, y, min(TILE_SIZE, width - x), band_height, spam_normalize(counts)))
+    if total is None:
+        raise ValueError(f"{name} is too small to tile")
+    return spam_normalize(total), tiles
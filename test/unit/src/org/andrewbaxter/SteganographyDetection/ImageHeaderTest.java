@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.TskCoreException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ImageHeaderTest {
+
+    @Test
+    public void pngDimensionsComeFromIhdr() throws TskCoreException {
+        ByteBuffer png = ByteBuffer.allocate(33);
+        png.put(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        png.putInt(13).put("IHDR".getBytes(StandardCharsets.US_ASCII)).putInt(640).putInt(480);
+        assertHeader(ImageHeader.Format.PNG, 640, 480, sniff(png.array()));
+    }
+
+    @Test
+    public void jpegDimensionsComeFromTheFirstFrameHeader() throws TskCoreException {
+        ByteBuffer jpeg = ByteBuffer.allocate(64);
+        jpeg.putShort((short) 0xffd8);
+        jpeg.putShort((short) 0xffe0).putShort((short) 16).put(new byte[14]);  // APP0 to skip
+        jpeg.put((byte) 0xff);  // Fill byte
+        jpeg.putShort((short) 0xffc2).putShort((short) 17).put((byte) 8).putShort((short) 1080).putShort((short) 1920);
+        assertHeader(ImageHeader.Format.JPEG, 1920, 1080, sniff(jpeg.array()));
+    }
+
+    @Test
+    public void jpegWithoutFrameHeaderHasUnknownDimensions() throws TskCoreException {
+        byte[] jpeg = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xda, 0, 8, 0, 0, 0, 0};
+        ImageHeader header = sniff(jpeg);
+        assertEquals(ImageHeader.Format.JPEG, header.getFormat());
+        assertFalse(header.hasDimensions());
+    }
+
+    @Test
+    public void gifDimensionsAreLittleEndian() throws TskCoreException {
+        ByteBuffer gif = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        gif.put("GIF89a".getBytes(StandardCharsets.US_ASCII)).putShort((short) 300).putShort((short) 200);
+        assertHeader(ImageHeader.Format.GIF, 300, 200, sniff(gif.array()));
+    }
+
+    @Test
+    public void bmpTopDownHeightIsPositive() throws TskCoreException {
+        ByteBuffer bmp = ByteBuffer.allocate(54).order(ByteOrder.LITTLE_ENDIAN);
+        bmp.put((byte) 'B').put((byte) 'M').putInt(54).putInt(0).putInt(54);
+        bmp.putInt(40).putInt(800).putInt(-600);
+        assertHeader(ImageHeader.Format.BMP, 800, 600, sniff(bmp.array()));
+    }
+
+    @Test
+    public void pgmHeaderMaySkipComments() throws TskCoreException {
+        byte[] pgm = "P5\n# made by hand\n1024 768\n255\n".getBytes(StandardCharsets.US_ASCII);
+        assertHeader(ImageHeader.Format.PGM, 1024, 768, sniff(pgm));
+    }
+
+    @Test
+    public void tiffDimensionsComeFromTheFirstIfd() throws TskCoreException {
+        ByteBuffer tiff = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 256).putShort((short) 3).putInt(1).putShort((short) 2048).putShort((short) 0);  // ImageWidth, SHORT
+        tiff.putShort((short) 257).putShort((short) 4).putInt(1).putInt(1536);  // ImageLength, LONG
+        tiff.putInt(0);
+        assertHeader(ImageHeader.Format.TIFF, 2048, 1536, sniff(tiff.array()));
+    }
+
+    @Test
+    public void otherContentIsNotAnImage() throws TskCoreException {
+        assertNull(sniff("%PDF-1.7\n1 0 obj\n".getBytes(StandardCharsets.US_ASCII)));
+        assertNull(sniff(new byte[]{(byte) 0x89, 'P', 'N'}));  // Too short to tell
+    }
+
+    private static void assertHeader(ImageHeader.Format format, int width, int height, ImageHeader header) {
+        assertEquals(format, header.getFormat());
+        assertEquals(width, header.getWidth());
+        assertEquals(height, header.getHeight());
+    }
+
+    private static ImageHeader sniff(byte[] data) throws TskCoreException {
+        return ImageHeader.read(content(data), new byte[ImageHeader.SNIFF_BYTES]);
+    }
+
+    // ImageHeader only reads the content, so every other method of Content is left out
+    private static Content content(final byte[] data) {
+        return (Content) Proxy.newProxyInstance(Content.class.getClassLoader(), new Class<?>[]{Content.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("read") && args.length == 3) {
+                    byte[] buffer = (byte[]) args[0];
+                    long offset = (Long) args[1];
+                    int length = (int) Math.min((Long) args[2], Math.max(0, data.length - offset));
+                    System.arraycopy(data, (int) Math.min(offset, data.length), buffer, 0, length);
+                    return length;
+                }
+                if (method.getName().equals("getSize")) {
+                    return (long) data.length;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
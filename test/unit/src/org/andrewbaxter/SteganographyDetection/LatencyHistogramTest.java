@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 32;  // Buckets double in width, each split in 32
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10, histogram.getPercentileNanos(50));
+        assertEquals(19, histogram.getPercentileNanos(95));
+        assertEquals(20, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void percentilesOfAUniformSpreadAreWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(100000, histogram.getCount());
+        assertEquals(50000500, histogram.getMeanNanos());
+        assertWithin(50000000L, histogram.getPercentileNanos(50));
+        assertWithin(90000000L, histogram.getPercentileNanos(90));
+        assertWithin(99000000L, histogram.getPercentileNanos(99));
+        assertEquals(100000000L, histogram.getPercentileNanos(100));  // Never above the largest value
+    }
+
+    @Test
+    public void everyMagnitudeIsWithinTheBucketError() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long value = (long) Math.exp(random.nextDouble() * 42);  // Up to about 2e18 ns
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE / 2);  // So the maximum doesn't cap the first value's bucket
+            assertWithin(value, histogram.getPercentileNanos(50));
+        }
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(100));
+    }
+
+    // A percentile is the upper bound of its bucket: never below the value, at most 1/32 above
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " is below " + expected, actual >= expected);
+        assertTrue(actual + " is too far above " + expected, actual - expected <= Math.max(1, expected * MAX_RELATIVE_ERROR));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LsbScreenTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    public void equalPairsGiveAPValueOfOne() {
+        long[] histogram = new long[256];
+        for (int k = 0; k < 128; k++) {
+            histogram[2 * k] = 100 + k;
+            histogram[2 * k + 1] = 100 + k;
+        }
+        assertEquals(1.0, LsbScreen.pairOfValuesPValue(histogram), TOLERANCE);
+    }
+
+    @Test
+    public void pValueMatchesTheChiSquareDistribution() {
+        // One pair 60/40 gives chi-square 2: with one degree of freedom Q = erfc(1)
+        long[] histogram = new long[256];
+        histogram[0] = 60;
+        histogram[1] = 40;
+        histogram[2] = 50;
+        histogram[3] = 50;
+        assertEquals(0.157299207050285, LsbScreen.pairOfValuesPValue(histogram), TOLERANCE);
+
+        // Same statistic with two degrees of freedom: Q = exp(-1)
+        histogram[4] = 50;
+        histogram[5] = 50;
+        assertEquals(Math.exp(-1), LsbScreen.pairOfValuesPValue(histogram), TOLERANCE);
+    }
+
+    @Test
+    public void flatHistogramSaysNothing() {
+        long[] histogram = new long[256];
+        histogram[10] = 1000;
+        histogram[11] = 1000;
+        assertEquals(0.0, LsbScreen.pairOfValuesPValue(histogram), 0.0);
+    }
+
+    @Test
+    public void evenOnlyImageIsClean() {
+        Random random = new Random(1);
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = image.getRaster();
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                raster.setSample(x, y, 0, random.nextInt(256) & 0xfe);
+            }
+        }
+        LsbScreen screen = new LsbScreen(LsbScreen.DEFAULT_CLEAN_BELOW, 0.99);
+        double pValue = screen.pairOfValuesPValue(image);
+        assertTrue(pValue + " should be tiny", pValue < 1e-12);
+        assertEquals(LsbScreen.Decision.CLEAN, screen.decide(pValue));
+    }
+
+    @Test
+    public void fullyEmbeddedImageIsSuspected() {
+        Random random = new Random(2);
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 256; x += 2) {
+                // Each value once with either LSB, the even pairs a full embedding leaves
+                int value = random.nextInt(128) * 2;
+                image.setRGB(x, y, value * 0x010101);
+                image.setRGB(x + 1, y, (value + 1) * 0x010101);
+            }
+        }
+        LsbScreen screen = new LsbScreen(LsbScreen.DEFAULT_CLEAN_BELOW, 0.99);
+        double pValue = screen.pairOfValuesPValue(image);
+        assertTrue(pValue + " should be close to 1", pValue > 0.99);
+        assertEquals(LsbScreen.Decision.SUSPECTED, screen.decide(pValue));
+    }
+
+    @Test
+    public void decideUsesTheThresholds() {
+        LsbScreen screen = new LsbScreen(0.01, 0.9);
+        assertEquals(LsbScreen.Decision.CLEAN, screen.decide(0.001));
+        assertEquals(LsbScreen.Decision.AMBIGUOUS, screen.decide(0.01));
+        assertEquals(LsbScreen.Decision.AMBIGUOUS, screen.decide(0.5));
+        assertEquals(LsbScreen.Decision.AMBIGUOUS, screen.decide(0.9));
+        assertEquals(LsbScreen.Decision.SUSPECTED, screen.decide(0.95));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RankedFindingsTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("findings", ".jsonl");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void hitsAreRankedByStageScaleThenScore() throws IOException {
+        try (FindingsLog log = new FindingsLog(file)) {
+            log.append(hit(1, 2.0, DetectionStage.CLASSIFIER.getDisplayName()));
+            log.append(hit(2, 0.999, DetectionStage.PRE_FILTER.getDisplayName()));
+            log.append(hit(3, 5.0, DetectionStage.CACHE.getDisplayName()));
+            log.append(hit(4, 9.0, "A stage no longer in use"));
+            log.append(hit(5, 0.9999, DetectionStage.LEDGER_PRE_FILTER.getDisplayName()));
+            log.append(hit(6, -1.0, DetectionStage.CLASSIFIER.getDisplayName()));
+            log.append(hit(7, Double.NaN, DetectionStage.LEDGER.getDisplayName()));
+            log.append(hit(8, -1e30, DetectionStage.TILE_CLASSIFIER.getDisplayName()));
+            log.append(hit(9, Double.NaN, DetectionStage.PRE_FILTER.getDisplayName()));
+        }
+
+        // Pre-filter p-values first, then classifier scores, then stages that are no longer known;
+        // hits without a score come last in their scale
+        assertEquals(Arrays.asList(5L, 2L, 9L, 3L, 1L, 6L, 8L, 7L, 4L), rankedIds());
+    }
+
+    @Test
+    public void tiesKeepTheOrderTheyWereFoundIn() throws IOException {
+        try (FindingsLog log = new FindingsLog(file)) {
+            for (long id = 1; id <= 5; id++) {
+                log.append(hit(id, 1.25, DetectionStage.CLASSIFIER.getDisplayName()));
+            }
+        }
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), rankedIds());
+    }
+
+    @Test
+    public void emptyLogHasNoHits() throws IOException {
+        try (RankedFindings findings = new RankedFindings(file)) {
+            assertEquals(0, findings.size());
+            assertNull(findings.next());
+        }
+    }
+
+    @Test
+    public void hitsAreReadBackWhole() throws IOException {
+        try (FindingsLog log = new FindingsLog(file)) {
+            log.append(new SuspectedFile(12, "/img/a \"quoted\" name.png", "abc", 0.5, "SVM", DetectionStage.CLASSIFIER.getDisplayName(), "x=1,y=2", 33));
+        }
+        try (RankedFindings findings = new RankedFindings(file)) {
+            SuspectedFile hit = findings.next();
+            assertEquals(12, hit.getObjectId());
+            assertEquals("/img/a \"quoted\" name.png", hit.getFilePath());
+            assertEquals(0.5, hit.getScore(), 0.0);
+            assertEquals("SVM", hit.getDetectionMethod());
+            assertEquals("x=1,y=2", hit.getLocation());
+            assertEquals(33, hit.getElapsedMillis());
+            assertNull(findings.next());
+        }
+    }
+
+    private List<Long> rankedIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (RankedFindings findings = new RankedFindings(file)) {
+            SuspectedFile hit;
+            while ((hit = findings.next()) != null) {
+                ids.add(hit.getObjectId());
+            }
+            assertEquals(findings.size(), ids.size());
+        }
+        return ids;
+    }
+
+    private static SuspectedFile hit(long id, double score, String stage) {
+        return new SuspectedFile(id, "/img/" + id + ".png", "md5-" + id, score, "SVM", stage, null, 0);
+    }
+}
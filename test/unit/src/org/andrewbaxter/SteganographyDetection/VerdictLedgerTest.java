@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VerdictLedgerTest {
+
+    private static final String MD5 = "0123456789abcdef0123456789abcdef";
+    private static final String VERSION = "TIERED/pair-of-values-1/1.0E-4/1.0/model-a";
+
+    private File file;
+    private VerdictLedger ledger;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("ledger", ".db");
+        assertTrue(file.delete());
+        ledger = new VerdictLedger(file);
+    }
+
+    @After
+    public void tearDown() {
+        ledger.close();
+        file.delete();
+    }
+
+    @Test
+    public void getReturnsWhatPutStored() throws IOException {
+        ledger.put(42, MD5, 1000, VERSION, new Verdict(true, 3.5, "model-a", DetectionStage.CLASSIFIER));
+
+        VerdictLedger.Entry entry = ledger.get(42);
+        assertNotNull(entry);
+        assertEquals(MD5, entry.getMd5());
+        assertTrue(entry.isSuspected());
+        assertFalse(entry.isPreFiltered());
+        assertEquals(3.5, entry.getScore(), 0.0);
+        assertNull(ledger.get(43));
+    }
+
+    @Test
+    public void preFilterVerdictsAreMarked() throws IOException {
+        ledger.put(7, MD5, 1000, VERSION, new Verdict(false, 1e-9, LsbScreen.VERSION, DetectionStage.PRE_FILTER));
+
+        VerdictLedger.Entry entry = ledger.get(7);
+        assertTrue(entry.isPreFiltered());
+        assertFalse(entry.isSuspected());
+        assertEquals(1e-9, entry.getScore(), 0.0);
+    }
+
+    @Test
+    public void entryIsCurrentOnlyForTheSameVersionAndContent() throws IOException {
+        ledger.put(42, MD5, 1000, VERSION, new Verdict(false, -1.0, "model-a", DetectionStage.CLASSIFIER));
+        VerdictLedger.Entry entry = ledger.get(42);
+
+        assertTrue(entry.isCurrent(VERSION, 1000, MD5));
+        assertTrue(entry.isCurrent(VERSION, 1000, MD5.toUpperCase()));
+        assertTrue(entry.isCurrent(VERSION, 1000, null));  // Not hashed yet, compared by size
+        assertFalse(entry.isCurrent(VERSION + "x", 1000, MD5));
+        assertFalse(entry.isCurrent(VERSION, 1001, MD5));
+        assertFalse(entry.isCurrent(VERSION, 1000, "ffffffffffffffffffffffffffffffff"));
+    }
+
+    @Test
+    public void entriesSurviveGrowingAndReopening() throws IOException {
+        int count = 50000;  // More than the initial capacity allows, so the table grows
+        for (int i = 0; i < count; i++) {
+            ledger.put(i, MD5, i * 3L, VERSION, new Verdict(i % 5 == 0, i / 2.0, "model-a", DetectionStage.CLASSIFIER));
+        }
+        ledger.close();
+        ledger = new VerdictLedger(file);
+
+        for (int i = 0; i < count; i++) {
+            VerdictLedger.Entry entry = ledger.get(i);
+            assertNotNull("entry " + i, entry);
+            assertTrue(entry.isCurrent(VERSION, i * 3L, MD5));
+            assertEquals(i % 5 == 0, entry.isSuspected());
+            assertEquals(i / 2.0, entry.getScore(), 0.0);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Andrew Baxter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.andrewbaxter.SteganographyDetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VerdictStoreTest {
+
+    private File file;
+    private VerdictStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("verdicts", ".db");
+        assertTrue(file.delete());
+        store = new VerdictStore(file);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+        file.delete();
+    }
+
+    @Test
+    public void getReturnsWhatPutStored() throws IOException {
+        store.put(md5(1), new Verdict(true, 1.5, "model-a", DetectionStage.CLASSIFIER));
+        store.put(md5(2), new Verdict(false, -0.25, "model-a", DetectionStage.CLASSIFIER));
+
+        Verdict first = store.get(md5(1), "model-a");
+        assertNotNull(first);
+        assertTrue(first.isSuspected());
+        assertEquals(1.5, first.getScore(), 0.0);
+        assertEquals("model-a", first.getModelVersion());
+        assertEquals(DetectionStage.CACHE, first.getStage());
+        Verdict second = store.get(md5(2), "model-a");
+        assertFalse(second.isSuspected());
+        assertEquals(-0.25, second.getScore(), 0.0);
+        assertNull(store.get(md5(3), "model-a"));
+    }
+
+    @Test
+    public void verdictsAreKeptPerModelVersion() throws IOException {
+        store.put(md5(1), new Verdict(true, 2.0, "model-a", DetectionStage.CLASSIFIER));
+        store.put(md5(1), new Verdict(false, -2.0, "model-b", DetectionStage.CLASSIFIER));
+
+        assertEquals(2.0, store.get(md5(1), "model-a").getScore(), 0.0);
+        assertEquals(-2.0, store.get(md5(1), "model-b").getScore(), 0.0);
+        assertNull(store.get(md5(1), "model-c"));
+    }
+
+    @Test
+    public void putReplacesTheVerdictOfTheSameVersion() throws IOException {
+        store.put(md5(1), new Verdict(true, 2.0, "model-a", DetectionStage.CLASSIFIER));
+        store.put(md5(1), new Verdict(false, -1.0, "model-a", DetectionStage.CLASSIFIER));
+
+        Verdict verdict = store.get(md5(1), "model-a");
+        assertFalse(verdict.isSuspected());
+        assertEquals(-1.0, verdict.getScore(), 0.0);
+    }
+
+    @Test
+    public void verdictsSurviveGrowingAndReopening() throws IOException {
+        int count = 50000;  // More than the initial capacity allows, so the table grows
+        for (int i = 0; i < count; i++) {
+            store.put(md5(i), new Verdict(i % 3 == 0, i, "model-a", DetectionStage.CLASSIFIER));
+        }
+        store.close();
+        store = new VerdictStore(file);
+
+        for (int i = 0; i < count; i++) {
+            Verdict verdict = store.get(md5(i), "model-a");
+            assertNotNull("verdict " + i, verdict);
+            assertEquals(i % 3 == 0, verdict.isSuspected());
+            assertEquals(i, verdict.getScore(), 0.0);
+        }
+    }
+
+    static byte[] md5(int i) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(Integer.toString(i).getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is always available", e);
+        }
+    }
+}